@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+/*
+* Who the connector is to the switch: FSP, client name and the key and certificate
+* files used by the challenge/response handshake of every stream.
+*/
+public record ClientIdentity(String fspId,
+                             String clientName,
+                             String clientVersion,
+                             String privateKeyPath,
+                             String publicKeyPath,
+                             String certificatePath,
+                             String serverIntermediateCertificatePath,
+                             String serverRootCertificatePath,
+                             String serverFullCertificate,
+                             boolean mainClient) {
+}
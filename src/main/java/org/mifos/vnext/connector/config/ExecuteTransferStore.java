@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.grpc.Status;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.mifos.grpc.proto.vnext.TransferRequest;
+import org.mifos.grpc.proto.vnext.TransferResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+* Remembers the transfers sent to the switch by homeTransactionId, so a caller
+* retrying after a timeout joins the call still in progress or gets the stored
+* result instead of sending the transfer to the switch again. Transfers the switch
+* definitely rejected are forgotten, a retry of those goes to the switch. When the
+* outcome is unknown (deadline, connection lost) the failure is kept for the shorter
+* unknownOutcomeTtl, the switch may still have booked the transfer, but a switch
+* outage must not block retries for the full ttl.
+*/
+public class ExecuteTransferStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecuteTransferStore.class);
+
+    // Statuses telling the switch did not process the transfer
+    private static final Set<Status.Code> REJECTED = EnumSet.of(
+            Status.Code.INVALID_ARGUMENT,
+            Status.Code.UNAUTHENTICATED,
+            Status.Code.PERMISSION_DENIED,
+            Status.Code.NOT_FOUND,
+            Status.Code.ALREADY_EXISTS,
+            Status.Code.FAILED_PRECONDITION,
+            Status.Code.OUT_OF_RANGE,
+            Status.Code.UNIMPLEMENTED);
+
+    private record StoredTransfer(TransferRequest request, CompletableFuture<TransferResponse> result, boolean unknownOutcome) {
+    }
+
+    private final Cache<String, StoredTransfer> transfers;
+    private final AtomicLong replayedCounter = new AtomicLong(0);
+    private final AtomicLong conflictCounter = new AtomicLong(0);
+
+    public ExecuteTransferStore(long ttl, long unknownOutcomeTtl, long maxEntries) {
+        this(ttl, unknownOutcomeTtl, maxEntries, Ticker.systemTicker());
+    }
+
+    ExecuteTransferStore(long ttl, long unknownOutcomeTtl, long maxEntries, Ticker ticker) {
+        this.transfers = Caffeine.newBuilder()
+                .ticker(ticker)
+                .expireAfter(new Expiry<String, StoredTransfer>() {
+                    @Override
+                    public long expireAfterCreate(String key, StoredTransfer value, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(value.unknownOutcome() ? unknownOutcomeTtl : ttl);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, StoredTransfer value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, StoredTransfer value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .maximumSize(maxEntries)
+                .build();
+        logger.info("Execute transfer store - ttl: {} ms, unknown outcome ttl: {} ms, max entries: {}",
+                ttl, unknownOutcomeTtl, maxEntries);
+    }
+
+    // Sends the transfer once per homeTransactionId, retries get the stored or in progress result.
+    // A retry carrying a different transfer under the same homeTransactionId fails with ALREADY_EXISTS.
+    public CompletableFuture<TransferResponse> execute(TransferRequest request,
+                                                       Supplier<CompletableFuture<TransferResponse>> transfer) {
+        String homeTransactionId = request.getHomeTransactionId();
+        if (homeTransactionId.isEmpty()) {
+            logger.warn("Transfer without homeTransactionId, sent without idempotency check");
+            return transfer.get();
+        }
+        StoredTransfer processing = new StoredTransfer(request, new CompletableFuture<>(), false);
+        StoredTransfer existing = transfers.asMap().putIfAbsent(homeTransactionId, processing);
+        if (existing != null) {
+            if (!existing.request().equals(request)) {
+                conflictCounter.incrementAndGet();
+                logger.warn("Retried transfer {} does not match the transfer first sent with it, rejected", homeTransactionId);
+                return CompletableFuture.failedFuture(Status.ALREADY_EXISTS
+                        .withDescription("homeTransactionId " + homeTransactionId + " was already used for a different transfer")
+                        .asRuntimeException());
+            }
+            replayedCounter.incrementAndGet();
+            logger.info("Retried transfer {}, replaying the {} result", homeTransactionId, existing.result().isDone() ? "stored" : "in progress");
+            return existing.result().copy();
+        }
+        CompletableFuture<TransferResponse> result;
+        try {
+            result = transfer.get();
+        } catch (Exception e) {
+            // Never reached the switch
+            transfers.asMap().remove(homeTransactionId, processing);
+            processing.result().completeExceptionally(e);
+            return processing.result().copy();
+        }
+        result.whenComplete((response, error) -> {
+            if (error != null ? isRejected(error) : response.hasError()) {
+                transfers.asMap().remove(homeTransactionId, processing);
+            } else if (error != null) {
+                // Kept only for the unknown outcome ttl from now on
+                transfers.asMap().replace(homeTransactionId, processing,
+                        new StoredTransfer(request, processing.result(), true));
+                logger.warn("Transfer {} outcome unknown ({}), retries replay the failure for a while", homeTransactionId,
+                        Status.fromThrowable(error).getCode());
+            }
+            if (error != null) {
+                processing.result().completeExceptionally(error);
+            } else {
+                processing.result().complete(response);
+            }
+        });
+        return processing.result().copy();
+    }
+
+    private static boolean isRejected(Throwable error) {
+        return REJECTED.contains(Status.fromThrowable(error).getCode());
+    }
+
+    public long getReplayedCount() {
+        return replayedCounter.get();
+    }
+
+    public long getConflictCount() {
+        return conflictCounter.get();
+    }
+
+    public long getSize() {
+        return transfers.estimatedSize();
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class FineractHttpClientConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(FineractHttpClientConfig.class);
+
+    // Pooled connections to Fineract
+    @Value("${fineract.api.http.max-connections:50}")
+    private int maxConnections;
+
+    // Pooled connections per Fineract host
+    @Value("${fineract.api.http.max-connections-per-route:50}")
+    private int maxConnectionsPerRoute;
+
+    // TCP connect timeout in milliseconds
+    @Value("${fineract.api.http.connect-timeout:5000}")
+    private long connectTimeout;
+
+    // Response timeout in milliseconds
+    @Value("${fineract.api.http.read-timeout:30000}")
+    private long readTimeout;
+
+    // Maximum wait for a free pooled connection in milliseconds
+    @Value("${fineract.api.http.pool-acquire-timeout:5000}")
+    private long poolAcquireTimeout;
+
+    // Idle connections older than this are evicted, in milliseconds
+    @Value("${fineract.api.http.idle-eviction:30000}")
+    private long idleEviction;
+
+    // Keep-alive used when Fineract does not send a Keep-Alive header, in milliseconds
+    @Value("${fineract.api.http.keep-alive:60000}")
+    private long keepAlive;
+
+    // I/O reactor threads of the non-blocking client, 0 uses one per CPU
+    @Value("${fineract.api.http.io-threads:0}")
+    private int ioThreads;
+
+    // Non-blocking pooled client for every Fineract call
+    @Bean(destroyMethod = "close")
+    public CloseableHttpAsyncClient fineractHttpAsyncClient() {
+        logger.info("Fineract HTTP pool - max: {}, per route: {}, connect timeout: {} ms, read timeout: {} ms, pool acquire timeout: {} ms",
+                maxConnections, maxConnectionsPerRoute, connectTimeout, readTimeout, poolAcquireTimeout);
+
+        PoolingAsyncClientConnectionManager connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(connectionConfig())
+                .build();
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors())
+                .setSoTimeout(Timeout.ofMilliseconds(readTimeout))
+                .build();
+
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig())
+                .setIOReactorConfig(ioReactorConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleEviction))
+                .build();
+        client.start();
+        return client;
+    }
+
+    private ConnectionConfig connectionConfig() {
+        return ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                .setSocketTimeout(Timeout.ofMilliseconds(readTimeout))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build();
+    }
+
+    private RequestConfig requestConfig() {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolAcquireTimeout))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
+                .setConnectionKeepAlive(TimeValue.ofMilliseconds(keepAlive))
+                .build();
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+/*
+* Settings of the StreamHeartbeat of every stream, times in milliseconds.
+* An interval of 0 disables the heartbeat, a maxIdle of 0 disables the idle check.
+*/
+public record HeartbeatSettings(long interval,
+                                long timeout,
+                                int failureThreshold,
+                                long maxIdle,
+                                String service) {
+
+    public HeartbeatSettings {
+        failureThreshold = Math.max(1, failureThreshold);
+    }
+
+    public boolean enabled() {
+        return interval > 0;
+    }
+}
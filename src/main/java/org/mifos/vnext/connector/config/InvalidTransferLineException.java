@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+// A line of a bulk transfer request that does not map to a transfer. Only that line fails, the others go on.
+public class InvalidTransferLineException extends RuntimeException {
+
+    // Null when the line does not even carry one
+    private final String homeTransactionId;
+
+    public InvalidTransferLineException(String homeTransactionId, String message, Throwable cause) {
+        super(message, cause);
+        this.homeTransactionId = homeTransactionId;
+    }
+
+    public String getHomeTransactionId() {
+        return homeTransactionId;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.mifos.grpc.proto.vnext.StreamToClientMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+* Stream requests the connector is currently working on, with the time they
+* arrived and the time after which the switch no longer waits for the answer.
+*/
+public class PendingRequestRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(PendingRequestRegistry.class);
+
+    private final ConcurrentMap<String, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+    private final long partyInfoDeadline;
+    private final long transferDeadline;
+    private final AtomicLong expiredCounter = new AtomicLong(0);
+
+    public record PendingRequest(String pendingRequestId,
+                                 String streamMessageId,
+                                 StreamToClientMsg.ResponseTypeCase type,
+                                 Instant receivedAt,
+                                 Instant deadline) {
+
+        public boolean isExpired() {
+            return Instant.now().isAfter(deadline);
+        }
+    }
+
+    public PendingRequestRegistry(long partyInfoDeadline, long transferDeadline) {
+        this.partyInfoDeadline = partyInfoDeadline;
+        this.transferDeadline = transferDeadline;
+        logger.info("Pending request deadlines - partyInfo: {} ms, transfer: {} ms", partyInfoDeadline, transferDeadline);
+    }
+
+    public PendingRequest register(StreamToClientMsg streamToClientMsg) {
+        Instant receivedAt = Instant.now();
+        PendingRequest pendingRequest = new PendingRequest(
+                streamToClientMsg.getPendingRequestId(),
+                streamToClientMsg.getStreamMessageId(),
+                streamToClientMsg.getResponseTypeCase(),
+                receivedAt,
+                receivedAt.plusMillis(deadlineFor(streamToClientMsg.getResponseTypeCase())));
+        pendingRequests.put(keyOf(pendingRequest), pendingRequest);
+        return pendingRequest;
+    }
+
+    public void complete(PendingRequest pendingRequest) {
+        pendingRequests.remove(keyOf(pendingRequest), pendingRequest);
+    }
+
+    // True when the switch has already given up on the request, the caller should drop it
+    public boolean skipIfExpired(PendingRequest pendingRequest) {
+        if (!pendingRequest.isExpired()) {
+            return false;
+        }
+        expiredCounter.incrementAndGet();
+        logger.warn("Skipping {} pendingRequestId {}, deadline {} passed while queued",
+                pendingRequest.type(), pendingRequest.pendingRequestId(), pendingRequest.deadline());
+        return true;
+    }
+
+    private long deadlineFor(StreamToClientMsg.ResponseTypeCase type) {
+        return type == StreamToClientMsg.ResponseTypeCase.ACCEPTTRANSFERREQUEST ? transferDeadline : partyInfoDeadline;
+    }
+
+    private static String keyOf(PendingRequest pendingRequest) {
+        return !pendingRequest.pendingRequestId().isEmpty() ? pendingRequest.pendingRequestId() : pendingRequest.streamMessageId();
+    }
+
+    // Oldest first
+    public List<PendingRequest> getPendingRequests() {
+        List<PendingRequest> snapshot = new ArrayList<>(pendingRequests.values());
+        snapshot.sort(Comparator.comparing(PendingRequest::receivedAt));
+        return snapshot;
+    }
+
+    public int getPendingCount() {
+        return pendingRequests.size();
+    }
+
+    public long getExpiredCount() {
+        return expiredCounter.get();
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletionException;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+/*
+* Error codes sent back to the switch when a stream request can not be served.
+* Codes follow the FSPIOP error categories used by the vNext switch.
+*/
+public enum StreamErrorCode {
+
+    INTERNAL_ERROR("2001", "Internal server error"),
+    SERVICE_UNAVAILABLE("2003", "Service currently unavailable"),
+    SERVER_TIMED_OUT("2004", "Server timed out"),
+    UNSUPPORTED_REQUEST("3000", "Generic client error"),
+    VALIDATION_ERROR("3100", "Generic validation error"),
+    PARTY_NOT_FOUND("3204", "Party not found"),
+    PAYER_ERROR("4000", "Generic payer error"),
+    PAYEE_ERROR("5000", "Generic payee error");
+
+    private final String code;
+    private final String description;
+
+    StreamErrorCode(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    // Maps a failure of the request processing to the code reported to the switch
+    public static StreamErrorCode from(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof StreamRequestException streamRequestException) {
+            return streamRequestException.getErrorCode();
+        }
+        if (cause instanceof ResourceAccessException) {
+            return cause.getCause() instanceof SocketTimeoutException ? SERVER_TIMED_OUT : SERVICE_UNAVAILABLE;
+        }
+        if (cause instanceof HttpServerErrorException) {
+            return SERVICE_UNAVAILABLE;
+        }
+        if (cause instanceof HttpClientErrorException) {
+            return VALIDATION_ERROR;
+        }
+        return INTERNAL_ERROR;
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.mifos.grpc.proto.vnext.HealthCheckRequest;
+import org.mifos.grpc.proto.vnext.HealthCheckResponse;
+import org.mifos.grpc.proto.vnext.HealthGrpc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+* Application level liveness probe of an authenticated stream. Sends Health.Check
+* with the stream's session headers on the stream's own connection, and optionally
+* watches for inbound silence. A stream found dead is torn down, so it reconnects
+* in seconds instead of waiting for traffic or TCP keepalive to fail.
+*/
+public class StreamHeartbeat {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamHeartbeat.class);
+
+    private final VnextStream stream;
+    private final ScheduledExecutorService scheduler;
+    private final long interval;
+    private final long timeout;
+    private final int failureThreshold;
+    private final long maxIdle;
+    private final HealthCheckRequest healthCheckRequest;
+    private final AtomicInteger failures = new AtomicInteger(0);
+    private final AtomicBoolean checking = new AtomicBoolean(false);
+    private volatile ScheduledFuture<?> task;
+
+    public StreamHeartbeat(VnextStream stream, ScheduledExecutorService scheduler, HeartbeatSettings settings) {
+        this.stream = stream;
+        this.scheduler = scheduler;
+        this.interval = settings.interval();
+        this.timeout = settings.timeout();
+        this.failureThreshold = settings.failureThreshold();
+        this.maxIdle = settings.maxIdle();
+        this.healthCheckRequest = HealthCheckRequest.newBuilder().setService(settings.service()).build();
+    }
+
+    public void start() {
+        logger.info("Heartbeat of {} every {} ms, timeout {} ms, {} failures tolerated, max idle {} ms",
+                stream.getName(), interval, timeout, failureThreshold, maxIdle);
+        task = scheduler.scheduleWithFixedDelay(this::beat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void beat() {
+        try {
+            if (stream.isShuttingDown()) {
+                // A retired stream is not coming back
+                task.cancel(false);
+                return;
+            }
+            if (!stream.isAuthenticated()) {
+                // Nothing to probe until the handshake completes again
+                failures.set(0);
+                return;
+            }
+            long idle = System.currentTimeMillis() - stream.getLastMessageReceivedAt();
+            if (maxIdle > 0 && idle > maxIdle) {
+                stream.tearDown("no message received for " + idle + " ms");
+                return;
+            }
+            if (!checking.compareAndSet(false, true)) {
+                // The previous check is still waiting for its deadline
+                return;
+            }
+            HealthGrpc.newStub(stream.getChannelWithHeader())
+                    .withDeadlineAfter(timeout, TimeUnit.MILLISECONDS)
+                    .check(healthCheckRequest, new StreamObserver<HealthCheckResponse>() {
+                        @Override
+                        public void onNext(HealthCheckResponse response) {
+                            if (response.getStatus() == HealthCheckResponse.ServingStatus.SERVING) {
+                                failures.set(0);
+                            } else {
+                                failed("status " + response.getStatus());
+                            }
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                            checking.set(false);
+                            failed(Status.fromThrowable(t).toString());
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            checking.set(false);
+                        }
+                    });
+        } catch (Exception e) {
+            checking.set(false);
+            logger.error("Heartbeat of {} failed to run: {}", stream.getName(), e.getMessage(), e);
+        }
+    }
+
+    private void failed(String reason) {
+        int count = failures.incrementAndGet();
+        logger.warn("Health check of {} failed ({}/{}): {}", stream.getName(), count, failureThreshold, reason);
+        if (count >= failureThreshold) {
+            failures.set(0);
+            stream.tearDown("health check failed " + count + " times in a row");
+        }
+    }
+}
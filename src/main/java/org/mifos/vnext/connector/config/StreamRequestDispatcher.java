@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.mifos.grpc.proto.vnext.StreamToClientMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/*
+* Moves the processing of switch requests off the gRPC callback thread.
+* Party lookups and transfers run on separate bounded lanes so a burst of
+* slow deposits can not starve the lookups queued behind them.
+*/
+public class StreamRequestDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamRequestDispatcher.class);
+
+    private final ThreadPoolExecutor partyInfoExecutor;
+    private final ThreadPoolExecutor transferExecutor;
+    private final int capacity;
+    private final AtomicLong rejectedCounter = new AtomicLong(0);
+
+    public StreamRequestDispatcher(int partyInfoPoolSize, int partyInfoQueueCapacity,
+                                   int transferPoolSize, int transferQueueCapacity) {
+        this.partyInfoExecutor = newLane("vnext-partyinfo-", partyInfoPoolSize, partyInfoQueueCapacity);
+        this.transferExecutor = newLane("vnext-transfer-", transferPoolSize, transferQueueCapacity);
+        this.capacity = partyInfoPoolSize + partyInfoQueueCapacity + transferPoolSize + transferQueueCapacity;
+        logger.info("Stream dispatcher lanes - partyInfo: {} threads / {} queued, transfer: {} threads / {} queued",
+                partyInfoPoolSize, partyInfoQueueCapacity, transferPoolSize, transferQueueCapacity);
+    }
+
+    private static ThreadPoolExecutor newLane(String threadPrefix, int poolSize, int queueCapacity) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadPrefix);
+        threadFactory.setDaemon(true);
+        return new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Hands the request over to the lane serving its message type.
+    // Returns false when the lane is saturated and the request was not accepted.
+    public boolean dispatch(StreamToClientMsg streamToClientMsg, Runnable handler) {
+        ThreadPoolExecutor lane = laneFor(streamToClientMsg.getResponseTypeCase());
+        try {
+            lane.execute(() -> {
+                try {
+                    handler.run();
+                } catch (Exception e) {
+                    logger.error("Error processing {} pendingRequestId {}: {}",
+                            streamToClientMsg.getResponseTypeCase(), streamToClientMsg.getPendingRequestId(), e.getMessage(), e);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.incrementAndGet();
+            logger.warn("Lane for {} is saturated (active: {}, queued: {}), request rejected",
+                    streamToClientMsg.getResponseTypeCase(), lane.getActiveCount(), lane.getQueue().size());
+            return false;
+        }
+    }
+
+    private ThreadPoolExecutor laneFor(StreamToClientMsg.ResponseTypeCase responseType) {
+        switch (responseType) {
+            case PARTYINFOREQUEST:
+                return partyInfoExecutor;
+            case ACCEPTTRANSFERREQUEST:
+                return transferExecutor;
+            default:
+                throw new IllegalArgumentException("No dispatch lane for message type " + responseType);
+        }
+    }
+
+    // Requests the lanes can hold at once, running plus queued
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCounter.get();
+    }
+
+    public void shutdown() throws InterruptedException {
+        partyInfoExecutor.shutdown();
+        transferExecutor.shutdown();
+        if (!partyInfoExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+            partyInfoExecutor.shutdownNow();
+        }
+        if (!transferExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+            transferExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import java.util.concurrent.CompletionException;
+
+// A stream request that failed for a reason the switch should be told about
+public class StreamRequestException extends RuntimeException {
+
+    // Steps of an incoming transfer, a failure at LOOKUP left both accounts untouched
+    public enum TransferStage {
+        LOOKUP,
+        DEPOSIT,
+        WITHDRAWAL
+    }
+
+    private final StreamErrorCode errorCode;
+    private final TransferStage stage;
+
+    public StreamRequestException(StreamErrorCode errorCode, String message) {
+        this(errorCode, message, null, null);
+    }
+
+    public StreamRequestException(StreamErrorCode errorCode, String message, TransferStage stage, Throwable cause) {
+        super(message, cause);
+        this.errorCode = errorCode;
+        this.stage = stage;
+    }
+
+    // Tags a failure with the transfer step it came from, keeping the code and message reported to the switch
+    public static StreamRequestException atStage(TransferStage stage, Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof StreamRequestException streamRequestException) {
+            if (streamRequestException.stage != null) {
+                return streamRequestException;
+            }
+            return new StreamRequestException(streamRequestException.errorCode, streamRequestException.getMessage(), stage, cause);
+        }
+        StreamErrorCode errorCode = StreamErrorCode.from(cause);
+        return new StreamRequestException(errorCode, errorCode.getDescription(), stage, cause);
+    }
+
+    // Transfer step a failure came from, null when it was not tagged
+    public static TransferStage stageOf(Throwable error) {
+        return unwrap(error) instanceof StreamRequestException streamRequestException ? streamRequestException.stage : null;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    public StreamErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    public TransferStage getStage() {
+        return stage;
+    }
+}
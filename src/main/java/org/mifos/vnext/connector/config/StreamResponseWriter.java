@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.mifos.grpc.proto.vnext.StreamFromClientMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/*
+* Single writer for the client side of the switch stream.
+* StreamObserver is not thread-safe, so every thread building a response only
+* enqueues it here and one writer thread drains the queue while the transport
+* reports isReady(). Messages drained in the same pass are flushed together
+* by the Netty write queue.
+*/
+public class StreamResponseWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamResponseWriter.class);
+
+    private final ConcurrentLinkedQueue<StreamFromClientMsg> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedCounter = new AtomicInteger(0);
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final ExecutorService writerExecutor;
+    private final int capacity;
+    private volatile ClientCallStreamObserver<StreamFromClientMsg> requestStream;
+
+    public StreamResponseWriter(String name, int capacity) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(name + "-writer-");
+        threadFactory.setDaemon(true);
+        this.writerExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        this.capacity = capacity;
+    }
+
+    // Must be called from ClientResponseObserver.beforeStart, the onReady handler can not be set later
+    public void bind(ClientCallStreamObserver<StreamFromClientMsg> requestStream) {
+        this.requestStream = requestStream;
+        requestStream.setOnReadyHandler(this::scheduleDrain);
+    }
+
+    // Drops everything still queued for a stream that is gone
+    public void unbind() {
+        this.requestStream = null;
+        int dropped = 0;
+        while (queue.poll() != null) {
+            queuedCounter.decrementAndGet();
+            dropped++;
+        }
+        if (dropped > 0) {
+            logger.warn("Discarded {} outgoing messages queued for a closed stream", dropped);
+        }
+    }
+
+    public boolean send(StreamFromClientMsg message) {
+        if (requestStream == null) {
+            logger.error("Stream not bound, message {} not sent", message.getRequestTypeCase());
+            return false;
+        }
+        if (queuedCounter.incrementAndGet() > capacity) {
+            queuedCounter.decrementAndGet();
+            logger.error("Outgoing stream queue full ({} messages), message {} not sent", capacity, message.getRequestTypeCase());
+            return false;
+        }
+        queue.offer(message);
+        scheduleDrain();
+        return true;
+    }
+
+    // Half-closes the stream from the writer thread, after whatever is already queued
+    public void complete() {
+        if (writerExecutor.isShutdown()) {
+            return;
+        }
+        writerExecutor.execute(() -> {
+            drain();
+            ClientCallStreamObserver<StreamFromClientMsg> stream = requestStream;
+            if (stream != null) {
+                try {
+                    stream.onCompleted();
+                } catch (Exception e) {
+                    logger.warn("Error completing stream: {}", e.getMessage());
+                }
+            }
+            unbind();
+        });
+    }
+
+    public int getQueuedCount() {
+        return queuedCounter.get();
+    }
+
+    // Stops the writer thread once the tasks already handed to it, like complete(), have run
+    public void shutdown() {
+        writerExecutor.shutdown();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                writerExecutor.execute(this::drainAndReschedule);
+            } catch (RejectedExecutionException e) {
+                // Writer already stopped, a late onReady signal has nothing to write to
+                draining.set(false);
+            }
+        }
+    }
+
+    private void drainAndReschedule() {
+        try {
+            drain();
+        } finally {
+            draining.set(false);
+        }
+        // Catch messages enqueued or a ready signal raised after the last poll
+        ClientCallStreamObserver<StreamFromClientMsg> stream = requestStream;
+        if (!queue.isEmpty() && stream != null && stream.isReady()) {
+            scheduleDrain();
+        }
+    }
+
+    private void drain() {
+        ClientCallStreamObserver<StreamFromClientMsg> stream = requestStream;
+        int written = 0;
+        try {
+            while (stream != null && stream.isReady()) {
+                StreamFromClientMsg message = queue.poll();
+                if (message == null) {
+                    break;
+                }
+                queuedCounter.decrementAndGet();
+                stream.onNext(message);
+                written++;
+            }
+        } catch (Exception e) {
+            logger.error("Error writing to stream: {}", e.getMessage(), e);
+        }
+        if (written > 0) {
+            logger.debug("Wrote {} messages to stream, {} still queued", written, queuedCounter.get());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+/*
+* Settings of the authenticated streams to the switch.
+* count is the number of streams, the first one is the main client.
+* An inboundWindow of 0 lets VnextClient size it from the dispatcher capacity.
+*/
+public record StreamSettings(int outgoingQueueCapacity,
+                             int inboundWindow,
+                             int count,
+                             long reconnectInitialBackoff,
+                             long reconnectMaxBackoff,
+                             boolean standbyEnabled) {
+
+    public StreamSettings {
+        count = Math.max(1, count);
+    }
+
+    public StreamSettings withInboundWindow(int inboundWindow) {
+        return new StreamSettings(outgoingQueueCapacity, inboundWindow, count, reconnectInitialBackoff, reconnectMaxBackoff, standbyEnabled);
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.mifos.grpc.proto.vnext.LookupParticipantResponse;
+import org.mifos.grpc.proto.vnext.LookupPartyResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+* Keeps recent switch answers to participant and party lookups keyed by party id
+* type, party id, currency and owner FSP, since these mappings rarely change.
+* Answers saying the party is not there are cached with a shorter TTL. Failed calls
+* and switch errors other than not found are not cached, they may be transient.
+* Concurrent misses for the same key share a single call.
+*/
+public class SwitchLookupCache<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SwitchLookupCache.class);
+
+    public record LookupKey(String partyIdType, String partyId, String currencyCode, String ownerFspId) {
+    }
+
+    private final String name;
+    private final boolean enabled;
+    private final Cache<LookupKey, T> cache;
+    private final Predicate<T> cacheable;
+    // Lookups currently waiting on the switch, joined by callers asking for the same key
+    private final ConcurrentMap<LookupKey, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+
+    SwitchLookupCache(String name, boolean enabled, long ttl, long negativeTtl, long maxEntries,
+                      Predicate<T> found, Predicate<T> cacheable, Ticker ticker) {
+        this.name = name;
+        this.enabled = enabled;
+        this.cacheable = cacheable;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .ticker(ticker)
+                .expireAfter(new Expiry<LookupKey, T>() {
+                    @Override
+                    public long expireAfterCreate(LookupKey key, T value, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(found.test(value) ? ttl : negativeTtl);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(LookupKey key, T value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(LookupKey key, T value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        logger.info("Switch {} lookup cache enabled: {}, ttl: {} ms, negative ttl: {} ms, max entries: {}",
+                name, enabled, ttl, negativeTtl, maxEntries);
+    }
+
+    public static SwitchLookupCache<LookupParticipantResponse> forParticipants(boolean enabled, long ttl, long negativeTtl, long maxEntries) {
+        return forParticipants(enabled, ttl, negativeTtl, maxEntries, Ticker.systemTicker());
+    }
+
+    // Only FSPID and NOTFOUND answers are kept, an ERROR answer may be transient
+    static SwitchLookupCache<LookupParticipantResponse> forParticipants(boolean enabled, long ttl, long negativeTtl, long maxEntries,
+                                                                        Ticker ticker) {
+        return new SwitchLookupCache<>("participant", enabled, ttl, negativeTtl, maxEntries, LookupParticipantResponse::hasFspId,
+                response -> response.hasFspId() || response.hasNotFound(), ticker);
+    }
+
+    public static SwitchLookupCache<LookupPartyResponse> forParties(boolean enabled, long ttl, long negativeTtl, long maxEntries) {
+        return forParties(enabled, ttl, negativeTtl, maxEntries, Ticker.systemTicker());
+    }
+
+    // A party lookup has no not found answer, the switch reports it as a party not found error kept
+    // with the negative ttl. Any other error may be transient and is not kept.
+    static SwitchLookupCache<LookupPartyResponse> forParties(boolean enabled, long ttl, long negativeTtl, long maxEntries,
+                                                             Ticker ticker) {
+        return new SwitchLookupCache<>("party", enabled, ttl, negativeTtl, maxEntries, LookupPartyResponse::hasResponse,
+                response -> response.hasResponse() || isPartyNotFound(response), ticker);
+    }
+
+    static boolean isPartyNotFound(LookupPartyResponse response) {
+        return response.hasError() && StreamErrorCode.PARTY_NOT_FOUND.getCode().equals(response.getError().getCode());
+    }
+
+    // Returns the cached answer, joins a lookup already in flight for the same key, or calls the
+    // switch with the given loader and caches its answer. With bypass the cached answer is ignored
+    // and replaced by the new one.
+    public CompletableFuture<T> load(LookupKey key, boolean bypass, Supplier<CompletableFuture<T>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        if (!bypass) {
+            T cached = cache.getIfPresent(key);
+            logger.debug("Switch {} lookup cache {} for {}", name, cached != null ? "hit" : "miss", key);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        CompletableFuture<T> lookup = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, lookup);
+        if (existing != null) {
+            logger.debug("Joining switch {} lookup in flight for {}", name, key);
+            return existing.copy();
+        }
+        CompletableFuture<T> loaded;
+        try {
+            loaded = loader.get();
+        } catch (Exception e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+        loaded.whenComplete((response, error) -> {
+            // Cache first, so a caller arriving after the removal finds the answer
+            if (error == null && response != null && cacheable.test(response)) {
+                cache.put(key, response);
+            }
+            inFlight.remove(key, lookup);
+            if (error != null) {
+                lookup.completeExceptionally(error);
+            } else {
+                lookup.complete(response);
+            }
+        });
+        return lookup.copy();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.mifos.grpc.proto.vnext.ServerAcceptTransferRequest;
+import org.mifos.grpc.proto.vnext.ServerAcceptTransferResponse;
+import org.mifos.vnext.connector.config.StreamRequestException.TransferStage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+* Remembers the outcome of recent ACCEPTTRANSFERREQUESTs by transferId, so a
+* request redelivered by the switch is answered without touching Fineract again.
+* A redelivery arriving while the first one is still running waits for its result.
+*/
+public class TransferIdempotencyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferIdempotencyStore.class);
+
+    private final Cache<String, CompletableFuture<ServerAcceptTransferResponse>> transfers;
+    private final AtomicLong replayedCounter = new AtomicLong(0);
+
+    public TransferIdempotencyStore(long ttl, long maxEntries) {
+        this.transfers = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(ttl))
+                .maximumSize(maxEntries)
+                .build();
+        logger.info("Transfer idempotency store - ttl: {} ms, max entries: {}", ttl, maxEntries);
+    }
+
+    // Runs the transfer once per key, duplicates get the stored or in progress result
+    public CompletableFuture<ServerAcceptTransferResponse> execute(ServerAcceptTransferRequest request,
+                                                                   Supplier<CompletableFuture<ServerAcceptTransferResponse>> transfer) {
+        String key = keyOf(request);
+        if (key.isEmpty()) {
+            logger.warn("Transfer without transferId or homeTransactionId, processed without idempotency check");
+            return transfer.get();
+        }
+        CompletableFuture<ServerAcceptTransferResponse> processing = new CompletableFuture<>();
+        CompletableFuture<ServerAcceptTransferResponse> existing = transfers.asMap().putIfAbsent(key, processing);
+        if (existing != null) {
+            replayedCounter.incrementAndGet();
+            logger.info("Duplicate transfer {}, replaying the {} result", key, existing.isDone() ? "stored" : "in progress");
+            return existing.copy();
+        }
+        CompletableFuture<ServerAcceptTransferResponse> result;
+        try {
+            result = transfer.get();
+        } catch (Exception e) {
+            result = CompletableFuture.failedFuture(StreamRequestException.atStage(TransferStage.LOOKUP, e));
+        }
+        result.whenComplete((response, error) -> {
+            // Nothing was posted to Fineract before the deposit, a redelivery may succeed.
+            // Later failures stay, the deposit may have been booked and must not run twice.
+            if (error != null && StreamRequestException.stageOf(error) == TransferStage.LOOKUP) {
+                transfers.asMap().remove(key, processing);
+            }
+            if (error != null) {
+                processing.completeExceptionally(error);
+            } else {
+                processing.complete(response);
+            }
+        });
+        return processing.copy();
+    }
+
+    private static String keyOf(ServerAcceptTransferRequest request) {
+        return !request.getTransferId().isEmpty() ? request.getTransferId() : request.getHomeTransactionId();
+    }
+
+    public long getReplayedCount() {
+        return replayedCounter.get();
+    }
+
+    public long getSize() {
+        return transfers.estimatedSize();
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+/*
+* Connection settings of every channel to the switch, see VnextChannelFactory.
+* Keep-alive times are in milliseconds, 0 uses the connector defaults. eventLoopThreads
+* and executorThreads of 0 keep the Netty and gRPC defaults.
+*/
+public record TransportSettings(String serverDNS,
+                                int serverPort,
+                                int keepAliveTime,
+                                int keepAliveTimeout,
+                                boolean keepAliveWithoutCalls,
+                                VnextChannelFactory.Transport transport,
+                                int eventLoopThreads,
+                                boolean pooledAllocator,
+                                int executorThreads) {
+
+    private static final int DEFAULT_KEEPALIVE_TIME_MS = 10000;
+    private static final int DEFAULT_KEEPALIVE_TIMEOUT_MS = 5000;
+
+    public TransportSettings {
+        keepAliveTime = keepAliveTime > 0 ? keepAliveTime : DEFAULT_KEEPALIVE_TIME_MS;
+        keepAliveTimeout = keepAliveTimeout > 0 ? keepAliveTimeout : DEFAULT_KEEPALIVE_TIMEOUT_MS;
+        eventLoopThreads = Math.max(0, eventLoopThreads);
+    }
+}
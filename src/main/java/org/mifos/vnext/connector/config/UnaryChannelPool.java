@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.mifos.grpc.proto.vnext.InteropGrpcApiGrpc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+* Channels for the unary calls to the switch, separate from the stream channels.
+* Each channel is its own HTTP/2 connection, so the pool is not bound to the
+* concurrent stream limit and flow control window of a single connection.
+* Calls are spread round-robin or to the channel with the fewest calls in flight.
+*/
+public class UnaryChannelPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnaryChannelPool.class);
+
+    public enum Selection {
+        ROUND_ROBIN,
+        LEAST_IN_FLIGHT
+    }
+
+    private final Selection selection;
+    private final ManagedChannel[] channels;
+    private final InteropGrpcApiGrpc.InteropGrpcApiStub[] stubs;
+    private final AtomicIntegerArray inFlight;
+    private final AtomicInteger nextIndex = new AtomicInteger(0);
+
+    // session adds the authentication headers to every call
+    public UnaryChannelPool(VnextChannelFactory channelFactory, int size, Selection selection, ClientInterceptor session) {
+        int poolSize = Math.max(1, size);
+        this.selection = selection;
+        this.channels = new ManagedChannel[poolSize];
+        this.stubs = new InteropGrpcApiGrpc.InteropGrpcApiStub[poolSize];
+        this.inFlight = new AtomicIntegerArray(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            channels[i] = channelFactory.newChannel();
+            stubs[i] = InteropGrpcApiGrpc.newStub(ClientInterceptors.intercept(channels[i], session, inFlightCounter(i)));
+        }
+        logger.info("Unary channel pool - channels: {}, selection: {}", poolSize, selection);
+    }
+
+    public InteropGrpcApiGrpc.InteropGrpcApiStub nextStub() {
+        return stubs[nextIndex()];
+    }
+
+    private int nextIndex() {
+        int start = Math.floorMod(nextIndex.getAndIncrement(), stubs.length);
+        if (selection == Selection.ROUND_ROBIN || stubs.length == 1) {
+            return start;
+        }
+        // Scan from a rotating start so ties do not always land on the first channel
+        int best = start;
+        for (int i = 1; i < stubs.length; i++) {
+            int candidate = (start + i) % stubs.length;
+            if (inFlight.get(candidate) < inFlight.get(best)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private ClientInterceptor inFlightCounter(int index) {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                       CallOptions callOptions, Channel next) {
+                return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+                    @Override
+                    public void start(Listener<RespT> responseListener, Metadata headers) {
+                        inFlight.incrementAndGet(index);
+                        try {
+                            super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                                @Override
+                                public void onClose(Status status, Metadata trailers) {
+                                    inFlight.decrementAndGet(index);
+                                    super.onClose(status, trailers);
+                                }
+                            }, headers);
+                        } catch (RuntimeException e) {
+                            inFlight.decrementAndGet(index);
+                            throw e;
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    // Calls in flight on every channel
+    public int[] getInFlight() {
+        int[] counts = new int[inFlight.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = inFlight.get(i);
+        }
+        return counts;
+    }
+
+    public void shutdown() throws InterruptedException {
+        for (ManagedChannel channel : channels) {
+            channel.shutdown();
+        }
+        for (ManagedChannel channel : channels) {
+            channel.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
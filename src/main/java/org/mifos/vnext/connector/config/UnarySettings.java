@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+/*
+* Settings of the participant, party and transfer calls to the switch.
+* deadline is in milliseconds, 0 sends the calls without a deadline.
+* batchConcurrency and bulkWindow bound the calls in flight for a single batch or bulk request.
+* channels is the size of the UnaryChannelPool the calls are spread over.
+*/
+public record UnarySettings(long deadline,
+                            int batchConcurrency,
+                            int bulkWindow,
+                            int channels,
+                            UnaryChannelPool.Selection channelSelection) {
+
+    public UnarySettings {
+        batchConcurrency = Math.max(1, batchConcurrency);
+        bulkWindow = Math.max(1, bulkWindow);
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import io.grpc.ManagedChannel;
+import io.grpc.netty.NettyChannelBuilder;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/*
+* Builds the gRPC channels to the vNext switch. Every stream and every unary
+* pool channel is a channel of its own, so each one has its own HTTP/2 connection.
+* All channels share one event loop group, native epoll when available on Linux
+* or NIO otherwise, and optionally one fixed application executor for the call
+* callbacks instead of the gRPC default cached pool.
+*/
+public class VnextChannelFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(VnextChannelFactory.class);
+
+    public enum Transport {
+        AUTO,
+        EPOLL,
+        NIO
+    }
+
+    private final String serverDNS;
+    private final int serverPort;
+    private final int keepAliveTime;
+    private final int keepAliveTimeout;
+    private final boolean keepAliveWithoutCalls;
+    private final boolean pooledAllocator;
+    private final boolean epoll;
+    private final EventLoopGroup eventLoopGroup;
+    private final ExecutorService executor;
+
+    public VnextChannelFactory(TransportSettings settings) {
+        this.serverDNS = settings.serverDNS();
+        this.serverPort = settings.serverPort();
+        this.keepAliveTime = settings.keepAliveTime();
+        this.keepAliveTimeout = settings.keepAliveTimeout();
+        this.keepAliveWithoutCalls = settings.keepAliveWithoutCalls();
+        this.pooledAllocator = settings.pooledAllocator();
+
+        boolean epollAvailable = Epoll.isAvailable();
+        Transport transport = settings.transport();
+        if (transport == Transport.EPOLL && !epollAvailable) {
+            logger.warn("Native epoll transport not available, falling back to NIO: {}", Epoll.unavailabilityCause().getMessage());
+        }
+        this.epoll = transport != Transport.NIO && epollAvailable;
+        int threads = settings.eventLoopThreads();
+        DefaultThreadFactory eventLoopThreadFactory = new DefaultThreadFactory("vnext-eventloop", true);
+        this.eventLoopGroup = epoll
+                ? new EpollEventLoopGroup(threads, eventLoopThreadFactory)
+                : new NioEventLoopGroup(threads, eventLoopThreadFactory);
+
+        int executorThreads = settings.executorThreads();
+        if (executorThreads > 0) {
+            CustomizableThreadFactory executorThreadFactory = new CustomizableThreadFactory("vnext-grpc-");
+            executorThreadFactory.setDaemon(true);
+            this.executor = Executors.newFixedThreadPool(executorThreads, executorThreadFactory);
+        } else {
+            this.executor = null;
+        }
+        logger.info("vNext transport - {}, event loop threads: {}, pooled allocator: {}, executor threads: {}",
+                epoll ? "epoll" : "nio", threads > 0 ? threads : "default", pooledAllocator,
+                executor != null ? executorThreads : "default");
+    }
+
+    public ManagedChannel newChannel() {
+        try {
+            logger.info("Creating secure gRPC channel to {}:{}", serverDNS, serverPort);
+            ManagedChannel channel = channelBuilder().build();
+            logger.info("gRPC channel created successfully");
+            return channel;
+        } catch (Exception e) {
+            logger.error("Failed to create gRPC channel with Netty", e);
+            throw new RuntimeException("Failed to create gRPC channel: " + e.getMessage(), e);
+        }
+    }
+
+    // Channel settings shared by every channel, exposed for the transport benchmark
+    NettyChannelBuilder channelBuilder() {
+        NettyChannelBuilder builder = NettyChannelBuilder.forAddress(serverDNS, serverPort)
+                .eventLoopGroup(eventLoopGroup)
+                .channelType(epoll ? EpollSocketChannel.class : NioSocketChannel.class)
+                .withOption(ChannelOption.ALLOCATOR, pooledAllocator ? PooledByteBufAllocator.DEFAULT : UnpooledByteBufAllocator.DEFAULT)
+                .keepAliveTime(keepAliveTime, TimeUnit.MILLISECONDS)
+                .keepAliveTimeout(keepAliveTimeout, TimeUnit.MILLISECONDS)
+                .keepAliveWithoutCalls(keepAliveWithoutCalls);
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        return builder;
+    }
+
+    boolean isEpoll() {
+        return epoll;
+    }
+
+    // Must be called once every channel built here is shut down
+    public void shutdown() {
+        eventLoopGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -18,7 +18,7 @@
  */
 package org.mifos.vnext.connector.config;
 
-import io.grpc.netty.NettyChannelBuilder;
+import org.mifos.grpc.proto.vnext.ErrorResponse;
 import org.mifos.grpc.proto.vnext.InteropGrpcApiGrpc;
 import org.mifos.grpc.proto.vnext.LookupParticipantRequest;
 import org.mifos.grpc.proto.vnext.LookupParticipantResponse;
@@ -28,30 +28,45 @@ import org.mifos.grpc.proto.vnext.LookupPartySuccessResponse;
 import org.mifos.grpc.proto.vnext.ServerAcceptTransferRequest;
 import org.mifos.grpc.proto.vnext.ServerAcceptTransferResponse;
 import org.mifos.grpc.proto.vnext.ServerPartyInfoRequest;
-import org.mifos.grpc.proto.vnext.StreamClientChallengeResponse;
 import org.mifos.grpc.proto.vnext.StreamClientInitialRequest;
 import org.mifos.grpc.proto.vnext.StreamFromClientMsg;
-import org.mifos.grpc.proto.vnext.StreamServerInitialResponse;
-import org.mifos.grpc.proto.vnext.StreamServerReadyResponse;
+import org.mifos.grpc.proto.vnext.StreamMessageError;
 import org.mifos.grpc.proto.vnext.StreamToClientMsg;
 import org.mifos.grpc.proto.vnext.TransferRequest;
 import org.mifos.grpc.proto.vnext.TransferResponse;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.grpc.CallOptions;
 import io.grpc.Channel;
-import io.grpc.ClientInterceptors;
-import io.grpc.ManagedChannel;
-import io.grpc.StatusRuntimeException;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-import org.mifos.vnext.connector.dto.AccountDepositServiceResponse;
+import org.mifos.vnext.connector.config.StreamRequestException.TransferStage;
 import org.mifos.vnext.connector.dto.AccountLookupServiceResponse;
 import org.mifos.vnext.connector.dto.AccountWithdrawalServiceResponse;
 import org.mifos.vnext.connector.dto.ParticipantRequest;
@@ -60,271 +75,276 @@ import org.mifos.vnext.connector.dto.PartyRequestDto;
 import org.mifos.vnext.connector.dto.PartyResponseDto;
 import org.mifos.vnext.connector.dto.TransferRequestDto;
 import org.mifos.vnext.connector.dto.TransferResponseDto;
+import org.mifos.vnext.connector.rest.client.AccountLookupCache;
 import org.mifos.vnext.connector.rest.client.ApacheFineract;
 import org.mifos.vnext.connector.rest.client.VNextClientMapper;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 
 public class VnextClient {
 
     private static final Logger logger = LoggerFactory.getLogger(VnextClient.class);
 
-    private final ManagedChannel channel;
-    private final Channel channelWithHeader;
-    private final InteropGrpcApiGrpc.InteropGrpcApiStub connectionToVnext;
-    private final InteropGrpcApiGrpc.InteropGrpcApiBlockingStub connectionToBlockingVnext;
-    private StreamObserver<StreamFromClientMsg> streamFromClientMessageObserver;
-    private boolean Loggined = false;
-    private final String pchVnextFspId;
-    private final String pchVnextClientName;
+    private final UnaryChannelPool unaryChannelPool;
+    private final UnarySettings unary;
+    private final SwitchLookupCache<LookupParticipantResponse> participantCache;
+    private final SwitchLookupCache<LookupPartyResponse> partyCache;
+    private final ExecuteTransferStore executeTransferStore;
+    private final ClientIdentity identity;
     private final ApacheFineract apacheFineract;
+    private final StreamRequestDispatcher requestDispatcher;
+    private final TransferIdempotencyStore transferIdempotencyStore;
+    private final PendingRequestRegistry pendingRequestRegistry;
+    private final VnextChannelFactory channelFactory;
+    private final List<VnextStream> streams = new CopyOnWriteArrayList<>();
+    // Stream whose session the unary calls use, replaced by the standby on failover
+    private volatile VnextStream mainStream;
+    private volatile VnextStream standbyStream;
+    private final AtomicInteger standbySequence = new AtomicInteger(0);
+    private final AtomicLong failoverCounter = new AtomicLong(0);
+    private final ScheduledExecutorService reconnectScheduler;
+
+    // Settings every new stream is built with
+    private final StreamSettings streamSettings;
+    private final HeartbeatSettings heartbeatSettings;
 
 
     private final CryptoAndCertHelper cryptoHelper;
-    private final HeaderClientInterceptor headerInterceptor;
-    private final String clientId;
-    private String sessionSecret;
-    private final boolean mainClient;
-    private final String pchVnextClientVersion;
     private final String clientCertificate;
-    private final String clientPublicKeyPath;    
-    private final String clientPrivateKeyPath;    
-    private final String serverIntermediateCertificatePath;
-    private final String serverRootCertificatePath;
-    private final String serverFullCertPem;
     private final AtomicInteger streamMessageCounter = new AtomicInteger(0);
     
 
 
-    private static final int DEFAULT_GRPC_CONNECT_TIMEOUT_MS = 5000;
-    private static final int DEFAULT_GRPC_KEEPALIVE_TIME_MS = 10000;
-    private static final int DEFAULT_GRPC_KEEPALIVE_TIMEOUT_MS = 5000;
-
-    public VnextClient( String pchVnextFspId,
-                        String pchVnextClientName, 
-                        String pchVnextClientVersion,
-                        String clientPrivateKeyPath, 
-                        String clientPublicKeyPath,
-                        String clientCertPath,
-                        String serverIntermediateCertificatePath, 
-                        String serverRootCertificatePath, 
-                        String fullCertificate,
-                        boolean mainClient, 
-                        String pchVnextServerDNS,
-                        int pchVnextServerPort,
-                        int pchVnextKeepAliveTime, int pchVnextKeepAliveTimeout,
-                        boolean pchVnextKeepAliveTimeWithoutCalls, ApacheFineract apacheFineract) throws Exception {
-
-
-        this.pchVnextFspId = pchVnextFspId;
-        this.pchVnextClientName = pchVnextClientName;
-        this.pchVnextClientVersion = pchVnextClientVersion;
-        this.apacheFineract = apacheFineract;
-        this.mainClient = mainClient;
-
-        this.clientPublicKeyPath=clientPublicKeyPath;
-        this.clientPrivateKeyPath=clientPrivateKeyPath;
-        this.clientCertificate = loadClientCertPem(clientCertPath);
-
-        this.serverIntermediateCertificatePath = serverIntermediateCertificatePath;
-        this.serverRootCertificatePath = serverRootCertificatePath;
-        this.serverFullCertPem=fullCertificate;
-        
-
-        logger.info("Initializing CryptoAndCertHelper ");
-        logger.info("Client Private Key: {} ", clientPrivateKeyPath);
-        logger.info("Server Intermediate Certificate: {}", serverIntermediateCertificatePath);
-        this.cryptoHelper = new CryptoAndCertHelper(clientPrivateKeyPath, serverIntermediateCertificatePath, clientCertPath);
-
-
-        this.clientId = UUID.randomUUID().toString();
-        logger.info("Generated client ID for authentication: {}", clientId);
-
+    // Counters of one lookup cache, coalesced is -1 when the cache does not count joined calls
+    public record CacheMetrics(long size,
+                               long hits,
+                               long misses,
+                               long evictions,
+                               long coalesced) {
 
-        int keepAliveTime = pchVnextKeepAliveTime > 0 ? pchVnextKeepAliveTime : DEFAULT_GRPC_KEEPALIVE_TIME_MS;
-        int keepAliveTimeout = pchVnextKeepAliveTimeout > 0 ? pchVnextKeepAliveTimeout : DEFAULT_GRPC_KEEPALIVE_TIMEOUT_MS;
+        static CacheMetrics of(CacheStats stats, long size, long coalesced) {
+            return new CacheMetrics(size, stats.hitCount(), stats.missCount(), stats.evictionCount(), coalesced);
+        }
+    }
 
-        try {
+    public record Metrics(CacheMetrics participantCache,
+                          CacheMetrics partyCache,
+                          CacheMetrics accountLookupCache,
+                          int pendingRequests,
+                          long expiredRequests,
+                          long rejectedRequests,
+                          long failovers,
+                          long replayedIncomingTransfers,
+                          long replayedOutgoingTransfers,
+                          long conflictingOutgoingTransfers,
+                          int[] unaryCallsInFlight) {
+    }
 
+    public VnextClient( ClientIdentity identity,
+                        TransportSettings transport,
+                        ApacheFineract apacheFineract,
+                        StreamRequestDispatcher requestDispatcher,
+                        StreamSettings stream,
+                        TransferIdempotencyStore transferIdempotencyStore,
+                        PendingRequestRegistry pendingRequestRegistry,
+                        HeartbeatSettings heartbeat,
+                        UnarySettings unary,
+                        SwitchLookupCache<LookupParticipantResponse> participantCache,
+                        SwitchLookupCache<LookupPartyResponse> partyCache,
+                        ExecuteTransferStore executeTransferStore) throws Exception {
+
+
+        this.identity = identity;
+        this.apacheFineract = apacheFineract;
+        this.requestDispatcher = requestDispatcher;
+        this.transferIdempotencyStore = transferIdempotencyStore;
+        this.pendingRequestRegistry = pendingRequestRegistry;
+        this.unary = unary;
+        this.participantCache = participantCache;
+        this.partyCache = partyCache;
+        this.executeTransferStore = executeTransferStore;
+        this.heartbeatSettings = heartbeat;
 
-            logger.info("Creating secure gRPC channel to {}:{}", pchVnextServerDNS, pchVnextServerPort);            
-            // Crear el canal
-            this.channel = NettyChannelBuilder.forAddress(pchVnextServerDNS, pchVnextServerPort)                    
-                    .keepAliveTime(keepAliveTime, TimeUnit.MILLISECONDS)
-                    .keepAliveTimeout(keepAliveTimeout, TimeUnit.MILLISECONDS)
-                    .keepAliveWithoutCalls(pchVnextKeepAliveTimeWithoutCalls)
-                    .build();
+        this.clientCertificate = loadClientCertPem(identity.certificatePath());
 
-            logger.info("gRPC channel created successfully");
-        } catch (Exception e) {
-            logger.error("Failed to create gRPC channel with Netty", e);
-            throw new RuntimeException("Failed to create gRPC channel: " + e.getMessage(), e);
+        logger.info("Initializing CryptoAndCertHelper ");
+        logger.info("Client Private Key: {} ", identity.privateKeyPath());
+        logger.info("Server Intermediate Certificate: {}", identity.serverIntermediateCertificatePath());
+        this.cryptoHelper = new CryptoAndCertHelper(identity.privateKeyPath(), identity.serverIntermediateCertificatePath(),
+                identity.certificatePath());
+
+
+        this.channelFactory = new VnextChannelFactory(transport);
+
+        CustomizableThreadFactory reconnectThreadFactory = new CustomizableThreadFactory("vnext-reconnect-");
+        reconnectThreadFactory.setDaemon(true);
+        this.reconnectScheduler = Executors.newSingleThreadScheduledExecutor(reconnectThreadFactory);
+
+        // The main stream plus secondaries, every one on its own connection and with its own credentials
+        int count = stream.count();
+        // Never ask the switch for more requests than the dispatcher lanes can hold, across all streams
+        int capacityPerStream = Math.max(1, requestDispatcher.getCapacity() / (stream.standbyEnabled() ? count + 1 : count));
+        this.streamSettings = stream.withInboundWindow(stream.inboundWindow() > 0
+                ? Math.min(stream.inboundWindow(), capacityPerStream) : capacityPerStream);
+        for (int i = 0; i < count; i++) {
+            streams.add(newStream("vnext-stream-" + i, i == 0 && identity.mainClient()));
+        }
+        this.mainStream = streams.get(0);
+        if (stream.standbyEnabled()) {
+            this.standbyStream = newStream("vnext-standby-" + standbySequence.getAndIncrement(), false);
+            streams.add(standbyStream);
         }
 
-        this.headerInterceptor = new HeaderClientInterceptor(pchVnextFspId);
-        this.headerInterceptor.setClientId(this.clientId);
-
-        this.channelWithHeader = ClientInterceptors.intercept(channel, headerInterceptor);
-
-        connectionToVnext = InteropGrpcApiGrpc.newStub(channelWithHeader);
-        connectionToBlockingVnext = InteropGrpcApiGrpc.newBlockingStub(channelWithHeader);
+        // Unary calls use the session of the current main stream on a pool of channels of their own
+        ClientInterceptor mainStreamSession = new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                                                                       CallOptions callOptions, Channel next) {
+                return mainStream.getHeaderInterceptor().interceptCall(method, callOptions, next);
+            }
+        };
+        this.unaryChannelPool = new UnaryChannelPool(channelFactory, unary.channels(), unary.channelSelection(), mainStreamSession);
 
-        logger.info("VnextClient initialized successfully for FSP: {}", pchVnextFspId);
+        logger.info("VnextClient initialized successfully for FSP: {} with {} streams", identity.fspId(), count);
     }
 
-    public boolean start() {
-        logger.info("Starting authentication process for client: {}", clientId);
-
-
+    private VnextStream newStream(String name, boolean mainClient) {
         StreamClientInitialRequest initialRequest = StreamClientInitialRequest.newBuilder()
-                .setFspId(this.pchVnextFspId)
-                .setClientName(this.pchVnextClientName)
-                .setClientVersion(this.pchVnextClientVersion)
-                .setMainClient(this.mainClient)
+                .setFspId(identity.fspId())
+                .setClientName(identity.clientName())
+                .setClientVersion(identity.clientVersion())
+                .setMainClient(mainClient)
                 .setClientPem(this.clientCertificate)
                 .build();
+        VnextStream stream = new VnextStream(name, identity.fspId(), initialRequest, cryptoHelper,
+                channelFactory, streamSettings, this, reconnectScheduler);
+        if (heartbeatSettings.enabled()) {
+            new StreamHeartbeat(stream, reconnectScheduler, heartbeatSettings).start();
+        }
+        return stream;
+    }
 
-        StreamFromClientMsg initialMessage = StreamFromClientMsg.newBuilder()
-                .setInitialRequest(initialRequest)
-                .build();
-
-        StreamObserver<StreamToClientMsg> responseObserver = new StreamObserver<StreamToClientMsg>() {
-            @Override
-            public void onNext(StreamToClientMsg streamToClientMsg) {
-                try {
+    public boolean start() {
+        boolean started = true;
+        for (VnextStream stream : streams) {
+            started &= stream.start();
+        }
+        return started;
+    }
 
-                    logger.debug("=== RECEIVED SERVER MESSAGE ===");
-                    logger.debug("Message type: {}", streamToClientMsg.getResponseTypeCase());
-                    logger.debug("StreamMessageId: {}", streamToClientMsg.getStreamMessageId());
-                    logger.debug("PendingRequestId: {}", streamToClientMsg.getPendingRequestId());
-                    logger.debug("HasPendingRequestId: {}", streamToClientMsg.hasPendingRequestId());
-
-
-                    logger.debug("All fields: {}", streamToClientMsg.getAllFields());
-                    logger.debug("===============================");
-                    switch (streamToClientMsg.getResponseTypeCase()) {
-                        case INITIALRESPONSE:
-                            logger.debug("Processing INITIALRESPONSE - Challenge received");
-                            handleInitialResponse(streamToClientMsg.getInitialResponse());
-                            break;
-                        case READYRESPONSE:
-                            logger.debug("Processing READYRESPONSE - Authentication complete");
-                            handleReadyResponse(streamToClientMsg.getReadyResponse());
-                            break;
-                        case PARTYINFOREQUEST:
-                            if (Loggined) {
-                                logger.debug("Processing PARTYINFOREQUEST");
-                                sendPartyInfo(streamToClientMsg);
-                            } else {
-                                logger.warn("Received party info request but client not authenticated");
-                            }
-                            break;
-                        case ACCEPTTRANSFERREQUEST:
-                            if (Loggined) {
-                                logger.debug("Processing ACCEPTTRANSFERREQUEST");
-                                sendMoneyTransfer(streamToClientMsg);
-                            } else {
-                                logger.warn("Received transfer request but client not authenticated");
-                            }
-                            break;
-                        case STREAMMESSAGEERROR:
-                            logger.error("Stream error received: {}",
-                                    streamToClientMsg.getStreamMessageError().getMessage());
-                            break;
-                        default:
-                            logger.debug("Received unhandled message type: {}",
-                                    streamToClientMsg.getResponseTypeCase());
-                    }
-                } catch (Exception e) {
-                    logger.error("Error processing server message: {}", e.getMessage(), e);
-                }
+    // Called by a stream that just lost its connection. When it was the main stream and the
+    // standby is authenticated, the standby takes over at once and true is returned, the lost
+    // stream is retired and a new standby is built in the background.
+    boolean onStreamLost(VnextStream lostStream) {
+        if (lostStream.isShuttingDown()) {
+            // Closed on purpose, neither a failover nor a reconnect is wanted
+            return true;
+        }
+        VnextStream standby;
+        synchronized (this) {
+            standby = standbyStream;
+            if (lostStream != mainStream || standby == null || !standby.isAuthenticated()) {
+                return false;
             }
+            mainStream = standby;
+            standbyStream = null;
+        }
+        failoverCounter.incrementAndGet();
+        logger.warn("{} lost, standby {} promoted to main stream", lostStream.getName(), standby.getName());
 
-            @Override
-            public void onCompleted() {
-                logger.info("Server closed the stream");
-                Loggined = false;
-                sessionSecret = null;
-                headerInterceptor.clearSession();
+        reconnectScheduler.execute(() -> {
+            streams.remove(lostStream);
+            try {
+                lostStream.shutdownNow();
+            } catch (Exception e) {
+                logger.error("Error retiring {}: {}", lostStream.getName(), e.getMessage(), e);
             }
-
-            @Override
-            public void onError(Throwable t) {
-                logger.error("Stream error occurred", t);
-                Loggined = false;
-                sessionSecret = null;
-                headerInterceptor.clearSession();
-                reconnect();
-
+            VnextStream newStandby = newStream("vnext-standby-" + standbySequence.getAndIncrement(), false);
+            streams.add(newStandby);
+            standbyStream = newStandby;
+            if (!newStandby.start()) {
+                newStandby.reconnect();
             }
-        };
+        });
+        return true;
+    }
 
-        try {
-            streamFromClientMessageObserver = connectionToVnext.startStream(responseObserver);
-            streamFromClientMessageObserver.onNext(initialMessage);
-            logger.info("Authentication process started successfully for client: {}", clientId);
-            return true;
-        } catch (StatusRuntimeException e) {
-            logger.error("Failed to start authentication - gRPC status: {}", e.getStatus(), e);
-            return false;
-        } catch (Exception e) {
-            logger.error("Failed to start authentication", e);
-            return false;
-        }
+    public long getFailoverCount() {
+        return failoverCounter.get();
     }
 
-    private void handleInitialResponse(StreamServerInitialResponse response) {
+    // Switch requests received on any of the streams, the answer goes back on the same stream
+    boolean onStreamMessage(VnextStream stream, StreamToClientMsg streamToClientMsg,
+                            ClientCallStreamObserver<StreamFromClientMsg> requestStream) {
+        boolean dispatched = false;
         try {
-            
-            // Validate PCH server signature
-            boolean isValid = cryptoHelper.validateSignature(this.clientId,response);
-           
-            if (!isValid) {
-                logger.error("Invalid server signature received.");
-                logger.error("Expected fingerprint: {} ", cryptoHelper.getServerIntermediatePublicKeyFingerprint());
-                logger.error("Received: {} ", response.getPubKeyFingerprint());
-                throw new SecurityException("Invalid server signature");
+            switch (streamToClientMsg.getResponseTypeCase()) {
+                case PARTYINFOREQUEST:
+                    if (stream.isAuthenticated()) {
+                        logger.debug("Dispatching PARTYINFOREQUEST");
+                        dispatched = dispatchRequest(stream, streamToClientMsg, () -> sendPartyInfo(stream, streamToClientMsg), requestStream);
+                    } else {
+                        logger.warn("Received party info request but client not authenticated");
+                    }
+                    break;
+                case ACCEPTTRANSFERREQUEST:
+                    if (stream.isAuthenticated()) {
+                        logger.debug("Dispatching ACCEPTTRANSFERREQUEST");
+                        dispatched = dispatchRequest(stream, streamToClientMsg, () -> sendMoneyTransfer(stream, streamToClientMsg), requestStream);
+                    } else {
+                        logger.warn("Received transfer request but client not authenticated");
+                    }
+                    break;
+                case STREAMMESSAGEERROR:
+                    logger.error("Stream error received: {}",
+                            streamToClientMsg.getStreamMessageError().getMessage());
+                    break;
+                default:
+                    logger.debug("Received unhandled message type: {}",
+                            streamToClientMsg.getResponseTypeCase());
+                    if (stream.isAuthenticated() && streamToClientMsg.hasPendingRequestId()) {
+                        sendErrorResponse(stream, streamToClientMsg, StreamErrorCode.UNSUPPORTED_REQUEST,
+                                "Unsupported request " + streamToClientMsg.getResponseTypeCase());
+                    }
             }
-
-            logger.info("Server signature validated successfully");
-
-            // Sign the nonce string
-            String signedNonce = cryptoHelper.signString(response);
-            
-            // Send the challenge response 
-            StreamClientChallengeResponse challengeResponse = StreamClientChallengeResponse.newBuilder()
-                    .setSignedNonce(signedNonce)
-                    .build();
-
-            StreamFromClientMsg responseMsg = StreamFromClientMsg.newBuilder()
-                    .setChallengeResponse(challengeResponse)
-                    .build();
-
-            streamFromClientMessageObserver.onNext(responseMsg);
-            logger.info("Challenge response sent to server successfully");
-
         } catch (Exception e) {
-            logger.error("Error handling initial response: {}", e.getMessage(), e);
-            try {
-                if (streamFromClientMessageObserver != null) {
-                    streamFromClientMessageObserver.onError(e);
-                }
-            } catch (Exception ex) {
-                logger.error("Error closing stream after authentication failure", ex);
+            logger.error("Error processing server message: {}", e.getMessage(), e);
+            if (stream.isAuthenticated() && streamToClientMsg.hasPendingRequestId()) {
+                sendErrorResponse(stream, streamToClientMsg, e);
             }
         }
+        return dispatched;
     }
 
-    private void handleReadyResponse(StreamServerReadyResponse response) {
-        this.sessionSecret = response.getSessionSecret();
-
-        // Update the header interceptor using the session secret
-        headerInterceptor.setSessionSecret(this.sessionSecret);
-
-        this.Loggined = true;
-        logger.info("Authentication complete. Session ready with secret for client: {}", clientId);
+    // Only decoding happens on the gRPC callback thread, Fineract calls are started from the dispatcher lanes.
+    // The next inbound message is requested from the switch once the request processing completes.
+    private boolean dispatchRequest(VnextStream stream, StreamToClientMsg streamToClientMsg, Supplier<CompletableFuture<Void>> handler,
+                                    ClientCallStreamObserver<StreamFromClientMsg> requestStream) {
+        PendingRequestRegistry.PendingRequest pendingRequest = pendingRequestRegistry.register(streamToClientMsg);
+        boolean accepted = requestDispatcher.dispatch(streamToClientMsg, () -> {
+            CompletableFuture<Void> processing = CompletableFuture.completedFuture(null);
+            try {
+                // The switch discards answers arriving after its deadline, do not spend Fineract calls on them
+                if (!pendingRequestRegistry.skipIfExpired(pendingRequest)) {
+                    processing = handler.get();
+                }
+            } finally {
+                processing.whenComplete((result, error) -> {
+                    pendingRequestRegistry.complete(pendingRequest);
+                    requestStream.request(1);
+                });
+            }
+        });
+        if (!accepted) {
+            pendingRequestRegistry.complete(pendingRequest);
+            logger.warn("Request {} pendingRequestId {} not processed, dispatcher is saturated",
+                    streamToClientMsg.getResponseTypeCase(), streamToClientMsg.getPendingRequestId());
+            sendErrorResponse(stream, streamToClientMsg, StreamErrorCode.SERVICE_UNAVAILABLE, "Connector is saturated");
+        }
+        return accepted;
     }
 
     private String loadClientCertPem(String certFilePath) throws IOException {
@@ -338,57 +358,52 @@ public class VnextClient {
         }
     }
 
+    // Unary calls carry the session of the main stream
     private void checkAuthentication() {
-        if (!this.Loggined || !headerInterceptor.isAuthenticated()) {
+        if (!mainStream.isAuthenticated()) {
             throw new IllegalStateException("vNext Client not authenticated yet. Call start() first.");
         }
     }
 
     public void shutdown() throws InterruptedException {
         logger.info("Disconnecting vNext Client");
-        this.Loggined = false;
-        this.sessionSecret = null;
-        headerInterceptor.clearSession();
 
-        if (streamFromClientMessageObserver != null) {
-            try {
-                streamFromClientMessageObserver.onCompleted();
-            } catch (Exception e) {
-                logger.warn("Error completing stream: {}", e.getMessage());
-            }
+        for (VnextStream stream : streams) {
+            stream.shutdown();
         }
+        reconnectScheduler.shutdownNow();
 
-        channel.shutdown().awaitTermination(10, TimeUnit.SECONDS);
+        unaryChannelPool.shutdown();
+        channelFactory.shutdown();
         logger.info("vNext Client Disconnected");
     }
 
-    private void sendMoneyTransfer(StreamToClientMsg streamToClientMsg) {
-        checkAuthentication();
-
-        if (streamFromClientMessageObserver == null) {
+    private CompletableFuture<Void> sendMoneyTransfer(VnextStream stream, StreamToClientMsg streamToClientMsg) {
+        if (!stream.isAuthenticated()) {
             logger.error("vNext Client Not Connected");
             throw new IllegalStateException("vNext Client Not Connected.");
         }
 
-        try {
-
-            String pendingRequestId = streamToClientMsg.getPendingRequestId();
-
-            logger.debug("PROCESSING TRANSFER REQUEST");
-            logger.debug("PendingRequestId: {}", pendingRequestId);
-
+        String pendingRequestId = streamToClientMsg.getPendingRequestId();
 
-            StreamFromClientMsg strmFromClient = handleTransferRequest(
-                    streamToClientMsg.getAcceptTransferRequest(),
-                    pendingRequestId
-            );
-
-            logger.debug("Transfer response built, sending...");
-            sendResponseMessage(strmFromClient);
+        logger.debug("PROCESSING TRANSFER REQUEST");
+        logger.debug("PendingRequestId: {}", pendingRequestId);
 
-        } catch(Exception e) {
-            logger.error("ERROR processing transfer request: {}", e.getMessage(), e);
-        }
+        return handleTransferRequest(streamToClientMsg.getAcceptTransferRequest(), pendingRequestId)
+                .<Void>handle((strmFromClient, error) -> {
+                    if (error != null) {
+                        logger.error("ERROR processing transfer request: {}", error.getMessage(), error);
+                        sendErrorResponse(stream, streamToClientMsg, error);
+                    } else {
+                        logger.debug("Transfer response built, sending...");
+                        sendResponseMessage(stream, strmFromClient);
+                    }
+                    return null;
+                })
+                .exceptionally(e -> {
+                    logger.error("ERROR sending transfer response: {}", e.getMessage(), e);
+                    return null;
+                });
     }
 
     /*public StreamFromClientMsg hanldeServerGetCustomerAccountsRequest (ServerGetCustomerAccountsRequest request,String pendingRequestId) throws Exception{
@@ -403,9 +418,7 @@ public class VnextClient {
                 .build();
     }*/
 
-    public StreamFromClientMsg handleTransferRequest(ServerAcceptTransferRequest request, String pendingRequestId) throws Exception {
-        checkAuthentication();
-
+    public CompletableFuture<StreamFromClientMsg> handleTransferRequest(ServerAcceptTransferRequest request, String pendingRequestId) {
         logger.debug("=== PROCESSING TRANSFER REQUEST ===");
         logger.debug("Transfer ID: {}", request.getTransferId());
         logger.debug("From: {} ({})", request.getFrom().getIdValue(), request.getFrom().getFspId());
@@ -414,43 +427,72 @@ public class VnextClient {
         logger.debug("PendingRequestId: {}", pendingRequestId);
         logger.debug("================================");
 
+        // A transfer redelivered by the switch gets the answer of the first delivery
+        return transferIdempotencyStore.execute(request, () -> executeAcceptTransfer(request))
+                .thenApply(serverAcceptTransferResponse -> buildTransferResponse(serverAcceptTransferResponse, pendingRequestId));
+    }
+
+    private CompletableFuture<ServerAcceptTransferResponse> executeAcceptTransfer(ServerAcceptTransferRequest request) {
 
         ServerPartyInfoRequest serverPartyInfoRequest = ServerPartyInfoRequest.newBuilder()
                 .setPartyId(request.getTo().getIdValue())
                 .setDestinationFspId(request.getTo().getFspId())
                 .build();
 
-        AccountLookupServiceResponse accountLookupResponse = apacheFineract.findClientAccount(serverPartyInfoRequest);
-        AccountDepositServiceResponse transferFineractResponse = apacheFineract.depositToClientAccount(request, accountLookupResponse);
-
-        boolean depositSuccess = transferFineractResponse.getTransactionStatus().equalsIgnoreCase("success");
-
-        logger.debug("Deposit result: {}", depositSuccess ? "SUCCESS" : "FAILED");
+        ServerPartyInfoRequest sourcePartyInfoRequest = ServerPartyInfoRequest.newBuilder()
+                .setPartyId(request.getFrom().getIdValue())
+                .setDestinationFspId(request.getFrom().getFspId())
+                .build();
 
+        // The payer lookup does not depend on the deposit, so both lookups are in flight together
+        CompletableFuture<AccountLookupServiceResponse> destinationLookup = apacheFineract.findClientAccountAsync(serverPartyInfoRequest);
+        CompletableFuture<AccountLookupServiceResponse> sourceLookup = apacheFineract.findClientAccountAsync(sourcePartyInfoRequest);
 
-        if (depositSuccess) {
-            ServerPartyInfoRequest sourcePartyInfoRequest = ServerPartyInfoRequest.newBuilder()
-                    .setPartyId(request.getFrom().getIdValue())
-                    .setDestinationFspId(request.getFrom().getFspId())
-                    .build();
+        // Both accounts must be known before any money moves
+        CompletableFuture<AccountLookupServiceResponse> accountsChecked = destinationLookup
+                .thenCombine(sourceLookup, (destinationAccount, sourceAccount) -> {
+                    if (!AccountLookupCache.isFound(destinationAccount)) {
+                        throw new StreamRequestException(StreamErrorCode.PARTY_NOT_FOUND,
+                                "Payee account " + request.getTo().getIdValue() + " not found");
+                    }
+                    if (!AccountLookupCache.isFound(sourceAccount)) {
+                        throw new StreamRequestException(StreamErrorCode.PAYER_ERROR,
+                                "Payer account " + request.getFrom().getIdValue() + " not found");
+                    }
+                    return destinationAccount;
+                });
+
+        return atStage(TransferStage.LOOKUP, accountsChecked)
+                .thenCompose(destinationAccount -> atStage(TransferStage.DEPOSIT,
+                        apacheFineract.depositToClientAccountAsync(request, destinationAccount)))
+                .thenCompose(transferFineractResponse -> {
+                    if (transferFineractResponse.getTransactionStatus() == null) {
+                        throw new StreamRequestException(StreamErrorCode.PAYEE_ERROR,
+                                "Deposit for transfer " + request.getTransferId() + " was not confirmed by Fineract",
+                                TransferStage.DEPOSIT, null);
+                    }
+                    boolean depositSuccess = transferFineractResponse.getTransactionStatus().equalsIgnoreCase("success");
 
-            AccountLookupServiceResponse sourceAccountLookupResponse = apacheFineract.findClientAccount(sourcePartyInfoRequest);
+                    logger.debug("Deposit result: {}", depositSuccess ? "SUCCESS" : "FAILED");
 
-            if (sourceAccountLookupResponse != null) {
-                AccountWithdrawalServiceResponse withdrawalFineractResponse = apacheFineract.withdrawalFromClientAccount(request, sourceAccountLookupResponse);
-            } else {
-                logger.warn("Source account not found, but deposit was successful");
-            }
-        }
+                    if (!depositSuccess) {
+                        return CompletableFuture.<AccountWithdrawalServiceResponse>completedFuture(null);
+                    }
+                    // Already completed, it was checked before the deposit
+                    return atStage(TransferStage.WITHDRAWAL,
+                            apacheFineract.withdrawalFromClientAccountAsync(request, sourceLookup.join()));
+                })
+                .thenApply(withdrawalFineractResponse -> transferResponseHeader(request).build());
+    }
 
+    // Tags the failures of one transfer step, so the idempotency store knows whether money may have moved
+    private static <T> CompletableFuture<T> atStage(TransferStage stage, CompletableFuture<T> step) {
+        return step.exceptionally(error -> {
+            throw StreamRequestException.atStage(stage, error);
+        });
+    }
 
-        ServerAcceptTransferResponse serverAcceptTransferResponse = ServerAcceptTransferResponse.newBuilder()
-                .setTransferId(request.getTransferId())
-                .setRequestId(request.getRequestId())
-                .setDestinationFspId(request.getFrom().getFspId())
-                .setSourceFspId(request.getTo().getFspId())
-                .setHomeTransactionId(request.getHomeTransactionId())
-                .build();
+    private StreamFromClientMsg buildTransferResponse(ServerAcceptTransferResponse serverAcceptTransferResponse, String pendingRequestId) {
 
         logger.debug("Final transfer response built");
 
@@ -462,33 +504,55 @@ public class VnextClient {
                 .build();
     }
 
-    private void sendPartyInfo(StreamToClientMsg streamToClientMsg) {
-        checkAuthentication();
+    private ServerAcceptTransferResponse.Builder transferResponseHeader(ServerAcceptTransferRequest request) {
+        return ServerAcceptTransferResponse.newBuilder()
+                .setTransferId(request.getTransferId())
+                .setRequestId(request.getRequestId())
+                .setDestinationFspId(request.getFrom().getFspId())
+                .setSourceFspId(request.getTo().getFspId())
+                .setHomeTransactionId(request.getHomeTransactionId());
+    }
 
-        if (streamFromClientMessageObserver == null) {
+    private CompletableFuture<Void> sendPartyInfo(VnextStream stream, StreamToClientMsg streamToClientMsg) {
+        if (!stream.isAuthenticated()) {
             logger.error("vNext Client Not Connected");
             throw new IllegalStateException("vNext Client Not Connected");
         }
 
-        try{
-            String pendingRequestId = streamToClientMsg.getPendingRequestId();
-            String streamMessageId = streamToClientMsg.getStreamMessageId();
-
-
-            logger.debug("SEND PARTY INFO - StreamMessageId: {}, PendingRequestId: {}, HasPendingRequestId: {}",
-                    streamMessageId, pendingRequestId, streamToClientMsg.hasPendingRequestId());
-            StreamFromClientMsg strmFromClient = handlePartyInfoRequest(streamToClientMsg.getPartyInfoRequest(),pendingRequestId);
-            sendResponseMessage(strmFromClient);
-        }
-        catch(Exception e){
-            logger.error("ERROR processing party info request: {}", e.getMessage(), e);
-        }
+        String pendingRequestId = streamToClientMsg.getPendingRequestId();
+        String streamMessageId = streamToClientMsg.getStreamMessageId();
+
+        logger.debug("SEND PARTY INFO - StreamMessageId: {}, PendingRequestId: {}, HasPendingRequestId: {}",
+                streamMessageId, pendingRequestId, streamToClientMsg.hasPendingRequestId());
+        return handlePartyInfoRequest(streamToClientMsg.getPartyInfoRequest(), pendingRequestId)
+                .<Void>handle((strmFromClient, error) -> {
+                    if (error != null) {
+                        logger.error("ERROR processing party info request: {}", error.getMessage(), error);
+                        sendErrorResponse(stream, streamToClientMsg, error);
+                    } else {
+                        sendResponseMessage(stream, strmFromClient);
+                    }
+                    return null;
+                })
+                .exceptionally(e -> {
+                    logger.error("ERROR sending party info response: {}", e.getMessage(), e);
+                    return null;
+                });
     }
 
-    public StreamFromClientMsg handlePartyInfoRequest(ServerPartyInfoRequest request, String pendingRequestId) throws Exception {
-        checkAuthentication();
+    public CompletableFuture<StreamFromClientMsg> handlePartyInfoRequest(ServerPartyInfoRequest request, String pendingRequestId) {
+        return apacheFineract.findClientAccountAsync(request)
+                .thenApply(accountLookupResponse -> {
+                    if (!AccountLookupCache.isFound(accountLookupResponse)) {
+                        throw new StreamRequestException(StreamErrorCode.PARTY_NOT_FOUND,
+                                "Party " + request.getPartyId() + " not found");
+                    }
+                    return buildPartyInfoResponse(request, accountLookupResponse, pendingRequestId);
+                });
+    }
 
-        AccountLookupServiceResponse accountLookupResponse = apacheFineract.findClientAccount(request);
+    private StreamFromClientMsg buildPartyInfoResponse(ServerPartyInfoRequest request, AccountLookupServiceResponse accountLookupResponse,
+                                                       String pendingRequestId) {
         String idPendingRequest = pendingRequestId;
 
 
@@ -507,10 +571,7 @@ public class VnextClient {
                 .setLastName(lastName)
                 .build();
 
-        LookupPartyResponse lookupResponse = LookupPartyResponse.newBuilder()
-                .setSourceFspId(validateField(request.getSourceFspId(), "mifos-bank-1"))
-                .setDestinationFspId(validateField(request.getDestinationFspId(), "mifos-bank-1"))
-                .setRequestId(idPendingRequest)
+        LookupPartyResponse lookupResponse = partyInfoResponseHeader(request, idPendingRequest)
                 .setResponse(successResponse)
                 .build();
 
@@ -541,6 +602,60 @@ public class VnextClient {
         return finalMessage;
     }
 
+    private LookupPartyResponse.Builder partyInfoResponseHeader(ServerPartyInfoRequest request, String pendingRequestId) {
+        return LookupPartyResponse.newBuilder()
+                .setSourceFspId(validateField(request.getSourceFspId(), "mifos-bank-1"))
+                .setDestinationFspId(validateField(request.getDestinationFspId(), "mifos-bank-1"))
+                .setRequestId(pendingRequestId);
+    }
+
+    private void sendErrorResponse(VnextStream stream, StreamToClientMsg streamToClientMsg, Throwable error) {
+        StreamErrorCode errorCode = StreamErrorCode.from(error);
+        // Only our own messages are passed on, HTTP error bodies from Fineract stay in the log
+        Throwable cause = error.getCause() instanceof StreamRequestException ? error.getCause() : error;
+        String message = cause instanceof StreamRequestException ? cause.getMessage() : errorCode.getDescription();
+        sendErrorResponse(stream, streamToClientMsg, errorCode, message);
+    }
+
+    // Answers a failed request right away, so the switch does not hold it until its own timeout
+    private void sendErrorResponse(VnextStream stream, StreamToClientMsg streamToClientMsg, StreamErrorCode errorCode, String message) {
+        StreamFromClientMsg errorMessage = buildErrorResponse(streamToClientMsg, errorCode, message);
+        logger.warn("Replying {} to {} pendingRequestId {} with error {}: {}", errorMessage.getRequestTypeCase(),
+                streamToClientMsg.getResponseTypeCase(), streamToClientMsg.getPendingRequestId(), errorCode.getCode(), message);
+        if (!stream.send(errorMessage)) {
+            logger.error("Error response for pendingRequestId {} could not be queued", streamToClientMsg.getPendingRequestId());
+        }
+    }
+
+    private StreamFromClientMsg buildErrorResponse(StreamToClientMsg streamToClientMsg, StreamErrorCode errorCode, String message) {
+        String pendingRequestId = streamToClientMsg.getPendingRequestId();
+        ErrorResponse errorResponse = ErrorResponse.newBuilder()
+                .setCode(errorCode.getCode())
+                .setMessage(message)
+                .build();
+
+        StreamFromClientMsg.Builder errorMessage = StreamFromClientMsg.newBuilder()
+                .setStreamMessageId(String.valueOf(streamMessageCounter.incrementAndGet()))
+                .setPendingRequestId(pendingRequestId);
+
+        switch (streamToClientMsg.getResponseTypeCase()) {
+            case PARTYINFOREQUEST:
+                errorMessage.setLookupPartyInfoResponse(partyInfoResponseHeader(streamToClientMsg.getPartyInfoRequest(), pendingRequestId)
+                        .setError(errorResponse));
+                break;
+            case ACCEPTTRANSFERREQUEST:
+                errorMessage.setAcceptTransferResponse(transferResponseHeader(streamToClientMsg.getAcceptTransferRequest())
+                        .setError(errorResponse));
+                break;
+            default:
+                errorMessage.setStreamMessageError(StreamMessageError.newBuilder()
+                        .setMessage(errorCode.getCode() + " " + message)
+                        .setOriginalStreamMessageId(streamToClientMsg.getStreamMessageId())
+                        .setOriginalStreamMessageName(streamToClientMsg.getResponseTypeCase().name()));
+        }
+        return errorMessage.build();
+    }
+
     // Helper for validation
     private String validateField(String value, String defaultValue) {
         if (value == null || value.trim().isEmpty()) {
@@ -550,8 +665,7 @@ public class VnextClient {
         return value;
     }
 
-    public void sendResponseMessage(StreamFromClientMsg strmFromClient) throws InterruptedException {
-        checkAuthentication();
+    public void sendResponseMessage(VnextStream stream, StreamFromClientMsg strmFromClient) {
         logger.debug("=== OUTGOING MESSAGE DEBUG ===");
         logger.debug("Message type: {}", strmFromClient.getRequestTypeCase());
         logger.debug("StreamMessageId: '{}'", strmFromClient.getStreamMessageId());
@@ -559,12 +673,18 @@ public class VnextClient {
         logger.debug("HasPendingRequestId: {}", strmFromClient.hasPendingRequestId());
         logger.debug("Sending message response type: {}", strmFromClient.getRequestTypeCase());
 
-        if (this.streamFromClientMessageObserver != null) {
-            this.streamFromClientMessageObserver.onNext(strmFromClient);
+        if (!stream.send(strmFromClient)) {
+            logger.error("Response for pendingRequestId {} could not be queued", strmFromClient.getPendingRequestId());
         }
     }
 
     public PartyResponseDto getPartyInfo(PartyRequestDto partyRequest, String sourceFspId) {
+        return getPartyInfoAsync(partyRequest, sourceFspId, false).join();
+    }
+
+    // Party lookup on the async stub, a switch failure completes the future with a failed response.
+    // With bypassCache the cached answer is ignored and refreshed.
+    public CompletableFuture<PartyResponseDto> getPartyInfoAsync(PartyRequestDto partyRequest, String sourceFspId, boolean bypassCache) {
         checkAuthentication();
 
         LookupPartyRequest grpcRequest = LookupPartyRequest.newBuilder()
@@ -574,78 +694,117 @@ public class VnextClient {
                 .setOwnerFspId(partyRequest.getOwnerFspId())
                 .build();
 
-        PartyResponseDto partyResponse = new PartyResponseDto();
-
-        try {
-            LookupPartyResponse grpcResponse = this.connectionToBlockingVnext.lookupParty(grpcRequest);
-
-            logger.debug("=== GRPC RESPONSE RECEIVED ===");
-            logger.debug("SourceFspId: '{}'", grpcResponse.getSourceFspId());
-            logger.debug("DestinationFspId: '{}'", grpcResponse.getDestinationFspId());
-            logger.debug("RequestId: '{}'", grpcResponse.getRequestId());
-            logger.debug("HasResponse: {}", grpcResponse.hasResponse());
-
-
-            partyResponse.setSourceFspId(sourceFspId);
-            partyResponse.setDestinationFspId(partyRequest.getOwnerFspId());
-
-            // RequestId del gRPC response o generar uno nuevo
-            partyResponse.setRequestId(
-                    !grpcResponse.getRequestId().isEmpty() ?
-                            grpcResponse.getRequestId() : UUID.randomUUID().toString()
-            );
-
-            if (grpcResponse.hasResponse()) {
-                LookupPartySuccessResponse success = grpcResponse.getResponse();
-                logger.debug("PartyId: '{}'", success.getPartyId());
-                logger.debug("FirstName: '{}'", success.getFirstName());
-                logger.debug("LastName: '{}'", success.getLastName());
-
-                partyResponse.setPartyId(success.getPartyId());
-                partyResponse.setPartyIdType(success.getPartyIdType());
-                partyResponse.setCurrencyCode(success.getCurrencyCode());
-                partyResponse.setFirsName(success.getFirstName());
-                partyResponse.setMiddleName(success.getMiddleName());
-                partyResponse.setLastName(success.getLastName());
-                partyResponse.setDateOfBirth(success.getDateOfBirth());
-
-                if (success.hasPartySubIdOrType()) {
-                    partyResponse.setPartySubIdOrType(success.getPartySubIdOrType());
-                }
-            } else {
-
-                partyResponse.setPartyId(partyRequest.getPartyId());
-                partyResponse.setPartyIdType(partyRequest.getPartyIdType());
-                partyResponse.setCurrencyCode(partyRequest.getCurrencyCode());
-            }
+        return lookupPartyAsync(grpcRequest, bypassCache)
+                .handle((grpcResponse, error) -> {
+                    PartyResponseDto partyResponse;
+                    if (error == null) {
+                        partyResponse = new PartyResponseDto();
+                        logger.debug("=== GRPC RESPONSE RECEIVED ===");
+                        logger.debug("SourceFspId: '{}'", grpcResponse.getSourceFspId());
+                        logger.debug("DestinationFspId: '{}'", grpcResponse.getDestinationFspId());
+                        logger.debug("RequestId: '{}'", grpcResponse.getRequestId());
+                        logger.debug("HasResponse: {}", grpcResponse.hasResponse());
+
+                        partyResponse.setSourceFspId(sourceFspId);
+                        partyResponse.setDestinationFspId(partyRequest.getOwnerFspId());
+
+                        // RequestId del gRPC response o generar uno nuevo
+                        partyResponse.setRequestId(
+                                !grpcResponse.getRequestId().isEmpty() ?
+                                        grpcResponse.getRequestId() : UUID.randomUUID().toString()
+                        );
+
+                        if (grpcResponse.hasResponse()) {
+                            LookupPartySuccessResponse success = grpcResponse.getResponse();
+                            logger.debug("PartyId: '{}'", success.getPartyId());
+                            logger.debug("FirstName: '{}'", success.getFirstName());
+                            logger.debug("LastName: '{}'", success.getLastName());
+
+                            partyResponse.setPartyId(success.getPartyId());
+                            partyResponse.setPartyIdType(success.getPartyIdType());
+                            partyResponse.setCurrencyCode(success.getCurrencyCode());
+                            partyResponse.setFirsName(success.getFirstName());
+                            partyResponse.setMiddleName(success.getMiddleName());
+                            partyResponse.setLastName(success.getLastName());
+                            partyResponse.setDateOfBirth(success.getDateOfBirth());
+
+                            if (success.hasPartySubIdOrType()) {
+                                partyResponse.setPartySubIdOrType(success.getPartySubIdOrType());
+                            }
+                        } else {
 
-            partyResponse.setExecutionStatus(true);
-            partyResponse.setSystemMessage("success");
+                            partyResponse.setPartyId(partyRequest.getPartyId());
+                            partyResponse.setPartyIdType(partyRequest.getPartyIdType());
+                            partyResponse.setCurrencyCode(partyRequest.getCurrencyCode());
+                        }
 
-        } catch (Exception e) {
-            logger.error("PARTYINFOREQUEST failure: {}", e.getMessage(), e);
-            partyResponse.setExecutionStatus(false);
-            partyResponse.setSystemMessage(e.getMessage());
+                        partyResponse.setExecutionStatus(true);
+                        partyResponse.setSystemMessage("success");
+                    } else {
+                        partyResponse = partyInfoFailure(partyRequest, sourceFspId, error);
+                    }
 
+                    logger.debug("=== FINAL PARTY RESPONSE ===");
+                    logger.debug("SourceFspId (from header): {}", partyResponse.getSourceFspId());
+                    logger.debug("DestinationFspId (from ownerFspId): {}", partyResponse.getDestinationFspId());
+                    logger.debug("RequestId: {}", partyResponse.getRequestId());
 
-            partyResponse.setSourceFspId(sourceFspId);
-            partyResponse.setDestinationFspId(partyRequest.getOwnerFspId());
-            partyResponse.setRequestId(UUID.randomUUID().toString());
-            partyResponse.setPartyId(partyRequest.getPartyId());
-            partyResponse.setPartyIdType(partyRequest.getPartyIdType());
-            partyResponse.setCurrencyCode(partyRequest.getCurrencyCode());
-        }
+                    return partyResponse;
+                });
+    }
 
+    // Party lookup through the cache for callers that already hold the switch request
+    public CompletableFuture<LookupPartyResponse> lookupPartyAsync(LookupPartyRequest request, boolean bypassCache) {
+        checkAuthentication();
+        SwitchLookupCache.LookupKey cacheKey = new SwitchLookupCache.LookupKey(request.getPartyIdType(),
+                request.getPartyId(), request.getCurrencyCode(), request.getOwnerFspId());
+        return partyCache.load(cacheKey, bypassCache,
+                () -> this.<LookupPartyResponse>unaryCall((stub, observer) -> stub.lookupParty(request, observer)));
+    }
 
-        logger.debug("=== FINAL PARTY RESPONSE ===");
-        logger.debug("SourceFspId (from header): {}", partyResponse.getSourceFspId());
-        logger.debug("DestinationFspId (from ownerFspId): {}", partyResponse.getDestinationFspId());
-        logger.debug("RequestId: {}", partyResponse.getRequestId());
+    // Party lookups for a batch of switch requests with at most batchConcurrency calls in flight, every
+    // response is handed to onResponse with its request index as soon as it completes
+    public CompletableFuture<Void> lookupPartiesAsync(List<LookupPartyRequest> requests,
+                                                      BiConsumer<Integer, LookupPartyResponse> onResponse) {
+        checkAuthentication();
+        return WindowedBatch.run(requests, unary.batchConcurrency(),
+                        request -> lookupPartyAsync(request, false),
+                        (request, error) -> LookupPartyResponse.newBuilder().setError(switchCallError(error)).build(),
+                        onResponse)
+                .thenApply(responses -> null);
+    }
 
+    private PartyResponseDto partyInfoFailure(PartyRequestDto partyRequest, String sourceFspId, Throwable error) {
+        logger.error("PARTYINFOREQUEST failure: {}", error.getMessage(), error);
+        PartyResponseDto partyResponse = new PartyResponseDto();
+        partyResponse.setExecutionStatus(false);
+        partyResponse.setSystemMessage(error.getMessage());
+
+        partyResponse.setSourceFspId(sourceFspId);
+        partyResponse.setDestinationFspId(partyRequest.getOwnerFspId());
+        partyResponse.setRequestId(UUID.randomUUID().toString());
+        partyResponse.setPartyId(partyRequest.getPartyId());
+        partyResponse.setPartyIdType(partyRequest.getPartyIdType());
+        partyResponse.setCurrencyCode(partyRequest.getCurrencyCode());
         return partyResponse;
     }
 
+    // Party lookups for every request with at most batchConcurrency calls in flight, results in request order
+    public CompletableFuture<List<PartyResponseDto>> getPartyInfoBatch(List<PartyRequestDto> partyRequests, String sourceFspId,
+                                                                       boolean bypassCache) {
+        checkAuthentication();
+        return WindowedBatch.run(partyRequests, unary.batchConcurrency(),
+                partyRequest -> getPartyInfoAsync(partyRequest, sourceFspId, bypassCache),
+                (partyRequest, error) -> partyInfoFailure(partyRequest, sourceFspId, error));
+    }
+
     public TransferResponseDto executeTransfer(TransferRequestDto transferRequest) {
+        return executeTransferAsync(transferRequest).join();
+    }
+
+    // Transfer on the async stub, a switch failure completes the future with a failed response.
+    // A retry with the same homeTransactionId gets the result of the first call.
+    public CompletableFuture<TransferResponseDto> executeTransferAsync(TransferRequestDto transferRequest) {
         checkAuthentication();
 
         TransferRequest executeTransferRequest = TransferRequest.newBuilder()
@@ -658,24 +817,154 @@ public class VnextClient {
                 .setNote(transferRequest.getNote())
                 .build();
 
-        TransferResponse grpcResponse = TransferResponse.newBuilder().build();
+        return executeTransferRequestAsync(executeTransferRequest)
+                .handle((grpcResponse, error) -> {
+                    TransferResponseDto transferResponse;
+                    if (error != null) {
+                        transferResponse = transferFailure(transferRequest, error);
+                    } else if (grpcResponse.hasError()) {
+                        logger.error("ACCEPTTRANSFERREQUEST rejected: {}", grpcResponse.getError().getMessage());
+                        transferResponse = new TransferResponseDto();
+                        transferResponse.setHomeTransactionId(transferRequest.getHomeTransactionId());
+                        transferResponse.setExecutionStatus(false);
+                        transferResponse.setSystemMessage(grpcResponse.getError().getMessage());
+                    } else {
+                        transferResponse = new TransferResponseDto();
+                        transferResponse.setHomeTransactionId(grpcResponse.getHomeTransactionId());
+                        transferResponse.setTransactionId(grpcResponse.getSuccess().getTransferId());
+                        transferResponse.setExecutionStatus(true);
+                        transferResponse.setSystemMessage("success");
+                    }
+                    return transferResponse;
+                });
+    }
+
+    // Transfer for callers that already hold the switch request.
+    // A retry with the same homeTransactionId gets the result of the first call.
+    public CompletableFuture<TransferResponse> executeTransferRequestAsync(TransferRequest request) {
+        checkAuthentication();
+        return executeTransferStore.execute(request,
+                () -> this.<TransferResponse>unaryCall((stub, observer) -> stub.executeTransfer(request, observer)));
+    }
+
+    private TransferResponseDto transferFailure(TransferRequestDto transferRequest, Throwable error) {
+        logger.error("ACCEPTTRANSFERREQUEST failure: {}", error.getMessage(), error);
         TransferResponseDto transferResponse = new TransferResponseDto();
+        transferResponse.setHomeTransactionId(transferRequest.getHomeTransactionId());
+        transferResponse.setExecutionStatus(false);
+        transferResponse.setSystemMessage(error.getMessage());
+        return transferResponse;
+    }
+
+    // Sends the transfers as they are read with at most bulkWindow calls in flight and hands every result
+    // to the consumer as soon as it completes, so memory does not grow with the number of transfers.
+    // Completed results wait in a queue bounded by the window and the consumer runs on the calling thread,
+    // never on a gRPC callback thread. A request the iterator rejects with InvalidTransferLineException gets
+    // a failed result of its own. Blocks until the last transfer sent completed, also when reading the
+    // requests or the consumer failed, and rethrows that failure afterwards.
+    public void executeTransfers(Iterator<TransferRequestDto> transferRequests, Consumer<TransferResponseDto> results)
+            throws InterruptedException {
+        // Never full, a result holds its place in the window until the consumer took it
+        BlockingQueue<TransferResponseDto> completed = new ArrayBlockingQueue<>(unary.bulkWindow());
+        BulkResults delivery = new BulkResults(results);
+        int inFlight = 0;
         try {
-            grpcResponse = this.connectionToBlockingVnext.executeTransfer(executeTransferRequest);
-            transferResponse.setHomeTransactionId(grpcResponse.getHomeTransactionId());
-            transferResponse.setTransactionId(grpcResponse.getSuccess().getTransferId());
-            transferResponse.setExecutionStatus(true);
-            transferResponse.setSystemMessage("success");
-        }
-        catch (Exception e) {
-            logger.error("ACCEPTTRANSFERREQUEST failure: {}", e.getMessage(), e);
-            transferResponse.setExecutionStatus(false);
-            transferResponse.setSystemMessage(e.getMessage());
+            // No new transfer once the results can no longer be handed over
+            while (!delivery.failed()) {
+                TransferResponseDto transferResponse;
+                while ((transferResponse = completed.poll()) != null) {
+                    inFlight--;
+                    delivery.accept(transferResponse);
+                }
+                if (!transferRequests.hasNext()) {
+                    break;
+                }
+                if (inFlight == unary.bulkWindow()) {
+                    inFlight--;
+                    delivery.accept(completed.take());
+                    if (delivery.failed()) {
+                        break;
+                    }
+                }
+                TransferRequestDto transferRequest;
+                try {
+                    transferRequest = transferRequests.next();
+                } catch (InvalidTransferLineException e) {
+                    delivery.accept(invalidTransferLine(e));
+                    continue;
+                }
+                CompletableFuture<TransferResponseDto> transfer;
+                try {
+                    transfer = executeTransferAsync(transferRequest);
+                } catch (Exception e) {
+                    transfer = CompletableFuture.failedFuture(e);
+                }
+                transfer.handle((response, error) -> error == null ? response : transferFailure(transferRequest, error))
+                        .thenAccept(completed::add);
+                inFlight++;
+            }
+        } finally {
+            // Results of the transfers still in flight, so the outcome of every transfer sent is known
+            while (inFlight > 0) {
+                inFlight--;
+                delivery.accept(completed.take());
+            }
         }
+        delivery.rethrow();
+    }
+
+    private static TransferResponseDto invalidTransferLine(InvalidTransferLineException error) {
+        logger.warn("Bulk transfer request skipped: {}", error.getMessage());
+        TransferResponseDto transferResponse = new TransferResponseDto();
+        transferResponse.setHomeTransactionId(error.getHomeTransactionId());
+        transferResponse.setExecutionStatus(false);
+        transferResponse.setSystemMessage(error.getMessage());
         return transferResponse;
     }
 
+    // Hands bulk results to the consumer. Once the consumer failed, the remaining results are logged
+    // instead, so every transfer sent to the switch still leaves a trace.
+    private static final class BulkResults {
+
+        private final Consumer<TransferResponseDto> consumer;
+        private RuntimeException failure;
+
+        BulkResults(Consumer<TransferResponseDto> consumer) {
+            this.consumer = consumer;
+        }
+
+        void accept(TransferResponseDto transferResponse) {
+            if (failure == null) {
+                try {
+                    consumer.accept(transferResponse);
+                    return;
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            logger.warn("Bulk transfer result not delivered - homeTransactionId: {}, transactionId: {}, executed: {}, message: {}",
+                    transferResponse.getHomeTransactionId(), transferResponse.getTransactionId(),
+                    transferResponse.isExecutionStatus(), transferResponse.getSystemMessage());
+        }
+
+        boolean failed() {
+            return failure != null;
+        }
+
+        void rethrow() {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
     public ParticipantResponse getParticipant(ParticipantRequest participantRequest){
+        return getParticipantAsync(participantRequest, false).join();
+    }
+
+    // Participant lookup on the async stub, a switch failure completes the future with a failed response.
+    // With bypassCache the cached answer is ignored and refreshed.
+    public CompletableFuture<ParticipantResponse> getParticipantAsync(ParticipantRequest participantRequest, boolean bypassCache) {
         checkAuthentication();
 
         LookupParticipantRequest lookupParticipantRequest = LookupParticipantRequest.newBuilder()
@@ -684,45 +973,164 @@ public class VnextClient {
                 .setCurrencyCode(participantRequest.getCurrencyCode())
                 .build();
 
-        LookupParticipantResponse lookupParticipantResponse = LookupParticipantResponse.newBuilder().build();
+        return lookupParticipantAsync(lookupParticipantRequest, bypassCache)
+                .handle((lookupParticipantResponse, error) -> {
+                    if (error != null) {
+                        return participantFailure(error);
+                    }
+                    ParticipantResponse participantResponse = new ParticipantResponse();
+                    participantResponse.setPartyId(participantRequest.getPartyId());
+                    switch (lookupParticipantResponse.getResponseTypeCase()) {
+                        case FSPID -> {
+                            participantResponse.setFspId(lookupParticipantResponse.getFspId());
+                            participantResponse.setExecutionStatus(true);
+                            participantResponse.setSystemMessage("success");
+                        }
+                        case ERROR -> {
+                            logger.error("PARTICIPANTREQUEST failure: {}", lookupParticipantResponse.getError().getMessage());
+                            participantResponse.setExecutionStatus(false);
+                            participantResponse.setSystemMessage(lookupParticipantResponse.getError().getMessage());
+                        }
+                        default -> {
+                            logger.info("PARTICIPANTREQUEST participant not found for {}", participantRequest.getPartyId());
+                            participantResponse.setExecutionStatus(false);
+                            participantResponse.setSystemMessage("Participant not found");
+                        }
+                    }
+                    return participantResponse;
+                });
+    }
+
+    // Participant lookup through the cache for callers that already hold the switch request
+    public CompletableFuture<LookupParticipantResponse> lookupParticipantAsync(LookupParticipantRequest request, boolean bypassCache) {
+        checkAuthentication();
+        // Participant lookups have no owner FSP
+        SwitchLookupCache.LookupKey cacheKey = new SwitchLookupCache.LookupKey(request.getPartyIdType(),
+                request.getPartyId(), request.getCurrencyCode(), null);
+        return participantCache.load(cacheKey, bypassCache,
+                () -> this.<LookupParticipantResponse>unaryCall((stub, observer) -> stub.lookupParticipant(request, observer)));
+    }
+
+    // Participant lookups for a batch of switch requests with at most batchConcurrency calls in flight, every
+    // response is handed to onResponse with its request index as soon as it completes
+    public CompletableFuture<Void> lookupParticipantsAsync(List<LookupParticipantRequest> requests,
+                                                           BiConsumer<Integer, LookupParticipantResponse> onResponse) {
+        checkAuthentication();
+        return WindowedBatch.run(requests, unary.batchConcurrency(),
+                        request -> lookupParticipantAsync(request, false),
+                        (request, error) -> LookupParticipantResponse.newBuilder().setError(switchCallError(error)).build(),
+                        onResponse)
+                .thenApply(responses -> null);
+    }
+
+    // Error of a failed switch call, coded with its gRPC status
+    public static ErrorResponse switchCallError(Throwable error) {
+        return ErrorResponse.newBuilder()
+                .setCode(Status.fromThrowable(error).getCode().name())
+                .setMessage(String.valueOf(error.getMessage()))
+                .build();
+    }
+
+    private ParticipantResponse participantFailure(Throwable error) {
+        logger.error("PARTICIPANTREQUEST failure: {}", error.getMessage(), error);
         ParticipantResponse participantResponse = new ParticipantResponse();
+        participantResponse.setExecutionStatus(false);
+        participantResponse.setSystemMessage(error.getMessage());
+        return participantResponse;
+    }
 
+    // Participant lookups for every request with at most batchConcurrency calls in flight, results in request order
+    public CompletableFuture<List<ParticipantResponse>> getParticipantBatch(List<ParticipantRequest> participantRequests,
+                                                                           boolean bypassCache) {
+        checkAuthentication();
+        return WindowedBatch.run(participantRequests, unary.batchConcurrency(),
+                participantRequest -> getParticipantAsync(participantRequest, bypassCache),
+                (participantRequest, error) -> {
+                    ParticipantResponse participantResponse = participantFailure(error);
+                    participantResponse.setPartyId(participantRequest.getPartyId());
+                    return participantResponse;
+                });
+    }
+
+    // Runs a unary call on the async stub, the future completes with the response or the call status
+    private <T> CompletableFuture<T> unaryCall(BiConsumer<InteropGrpcApiGrpc.InteropGrpcApiStub, StreamObserver<T>> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        InteropGrpcApiGrpc.InteropGrpcApiStub connectionToVnext = unaryChannelPool.nextStub();
+        InteropGrpcApiGrpc.InteropGrpcApiStub stub = unary.deadline() > 0
+                ? connectionToVnext.withDeadlineAfter(unary.deadline(), TimeUnit.MILLISECONDS)
+                : connectionToVnext;
         try {
-            lookupParticipantResponse = this.connectionToBlockingVnext.lookupParticipant(lookupParticipantRequest);
-            participantResponse.setFspId(lookupParticipantResponse.toString().split("\"")[1]);
-            participantResponse.setPartyId(participantRequest.getPartyId());
-            participantResponse.setExecutionStatus(true);
-            participantResponse.setSystemMessage("success");
-        }
-        catch (Exception e) {
-            logger.error("PARTICIPANTREQUEST failure: {}", e.getMessage(), e);
-            participantResponse.setExecutionStatus(false);
-            participantResponse.setSystemMessage(e.getMessage());
+            call.accept(stub, new StreamObserver<T>() {
+                @Override
+                public void onNext(T response) {
+                    future.complete(response);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    future.completeExceptionally(t);
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            });
+        } catch (Exception e) {
+            future.completeExceptionally(e);
         }
-        return participantResponse;
+        return future;
     }
-    
+
+    // Stream requests received from the switch and not answered yet
+    public List<PendingRequestRegistry.PendingRequest> getPendingRequests() {
+        return pendingRequestRegistry.getPendingRequests();
+    }
+
     public boolean isAuthenticated() {
-        return Loggined && headerInterceptor.isAuthenticated();
+        return mainStream.isAuthenticated();
     }
 
     public String getClientId() {
-        return clientId;
+        return mainStream.getClientId();
     }
 
     public String getSessionSecret() {
-        return sessionSecret;
+        return mainStream.getSessionSecret();
     }
 
+    // Schedules a reconnection of every stream, true if at least one was not already pending
     public boolean reconnect() {
-        try {
-            shutdown();
-            Thread.sleep(1000);
-            return start();
-        } catch (Exception e) {
-            logger.error("Reconnection failed", e);
-            return false;
+        boolean scheduled = false;
+        for (VnextStream stream : streams) {
+            scheduled |= stream.reconnect();
+        }
+        return scheduled;
+    }
+
+    // Cache, dispatcher, failover and replay counters since startup
+    public Metrics getMetrics() {
+        AccountLookupCache accountLookupCache = apacheFineract.getAccountLookupCache();
+        return new Metrics(
+                CacheMetrics.of(participantCache.getStats(), participantCache.getSize(), -1),
+                CacheMetrics.of(partyCache.getStats(), partyCache.getSize(), -1),
+                CacheMetrics.of(accountLookupCache.getStats(), accountLookupCache.getSize(), accountLookupCache.getCoalescedCount()),
+                pendingRequestRegistry.getPendingCount(),
+                pendingRequestRegistry.getExpiredCount(),
+                requestDispatcher.getRejectedCount(),
+                getFailoverCount(),
+                transferIdempotencyStore.getReplayedCount(),
+                executeTransferStore.getReplayedCount(),
+                executeTransferStore.getConflictCount(),
+                unaryChannelPool.getInFlight());
+    }
+
+    // Connection state and reconnect metrics of every stream
+    public List<VnextStream.Status> getStreamStatus() {
+        List<VnextStream.Status> status = new ArrayList<>();
+        for (VnextStream stream : streams) {
+            status.add(stream.getStatus());
         }
+        return status;
     }
 
 }
@@ -97,9 +97,151 @@ public class VnextClientConfig {
     @Value("${pch.vnext.server.keep-alive-without-calls:true}") 
     private boolean pchVnextKeepAliveTimeWithoutCalls;
 
+    // Inbound party info requests worker threads
+    @Value("${pch.vnext.stream.partyinfo.pool-size:8}")
+    private int pchVnextPartyInfoPoolSize;
+
+    // Inbound party info requests waiting for a worker
+    @Value("${pch.vnext.stream.partyinfo.queue-capacity:100}")
+    private int pchVnextPartyInfoQueueCapacity;
+
+    // Inbound transfer requests worker threads
+    @Value("${pch.vnext.stream.transfer.pool-size:8}")
+    private int pchVnextTransferPoolSize;
+
+    // Inbound transfer requests waiting for a worker
+    @Value("${pch.vnext.stream.transfer.queue-capacity:100}")
+    private int pchVnextTransferQueueCapacity;
+
+    // Responses waiting for the stream writer
+    @Value("${pch.vnext.stream.writer.queue-capacity:1000}")
+    private int pchVnextStreamWriterQueueCapacity;
+
+    // Inbound messages requested from the switch ahead of processing, 0 uses the dispatcher capacity
+    @Value("${pch.vnext.stream.inbound.window:0}")
+    private int pchVnextStreamInboundWindow;
+
+    // How long a processed transfer is remembered for redeliveries, in milliseconds
+    @Value("${pch.vnext.stream.transfer.idempotency.ttl:600000}")
+    private long pchVnextTransferIdempotencyTtl;
+
+    // Processed transfers remembered for redeliveries
+    @Value("${pch.vnext.stream.transfer.idempotency.max-entries:10000}")
+    private long pchVnextTransferIdempotencyMaxEntries;
+
+    // Time the switch waits for a party info answer, in milliseconds
+    @Value("${pch.vnext.stream.partyinfo.deadline:15000}")
+    private long pchVnextPartyInfoDeadline;
+
+    // Time the switch waits for a transfer answer, in milliseconds
+    @Value("${pch.vnext.stream.transfer.deadline:30000}")
+    private long pchVnextTransferDeadline;
+
+    // Authenticated streams opened to the switch, the first one is the main client
+    @Value("${pch.vnext.stream.count:1}")
+    private int pchVnextStreamCount;
+
+    // First delay before reconnecting a lost stream, doubled on every failed attempt, in milliseconds
+    @Value("${pch.vnext.stream.reconnect.initial-backoff:500}")
+    private long pchVnextReconnectInitialBackoff;
+
+    // Longest delay between reconnect attempts, in milliseconds
+    @Value("${pch.vnext.stream.reconnect.max-backoff:30000}")
+    private long pchVnextReconnectMaxBackoff;
+
+    // Health check period of every authenticated stream in milliseconds, 0 disables the heartbeat
+    @Value("${pch.vnext.stream.heartbeat.interval:0}")
+    private long pchVnextHeartbeatInterval;
+
+    // Deadline of a single health check, in milliseconds
+    @Value("${pch.vnext.stream.heartbeat.timeout:3000}")
+    private long pchVnextHeartbeatTimeout;
+
+    // Failed health checks in a row before the stream is torn down
+    @Value("${pch.vnext.stream.heartbeat.failure-threshold:3}")
+    private int pchVnextHeartbeatFailureThreshold;
+
+    // Inbound silence after which the stream is torn down in milliseconds, 0 disables it
+    @Value("${pch.vnext.stream.heartbeat.max-idle:0}")
+    private long pchVnextHeartbeatMaxIdle;
+
+    // Service name sent in the health check request
+    @Value("${pch.vnext.stream.heartbeat.service:}")
+    private String pchVnextHeartbeatService;
+
+    // Keep an extra authenticated stream ready to take over from the main one
+    @Value("${pch.vnext.stream.standby.enabled:false}")
+    private boolean pchVnextStandbyEnabled;
+
+    // Deadline of the participant, party and transfer calls to the switch, in milliseconds
+    @Value("${pch.vnext.unary.deadline:20000}")
+    private long pchVnextUnaryDeadline;
+
+    // Calls to the switch in flight for a single /partyinfo/batch or /participant/batch request
+    @Value("${pch.vnext.batch.concurrency:16}")
+    private int pchVnextBatchConcurrency;
+
+    @Value("${pch.vnext.lookup.cache.enabled:true}")
+    private boolean pchVnextLookupCacheEnabled;
+
+    // Time to live of a participant or party found by the switch, in milliseconds
+    @Value("${pch.vnext.lookup.cache.ttl:60000}")
+    private long pchVnextLookupCacheTtl;
+
+    // Time to live of a participant or party the switch did not find, in milliseconds
+    @Value("${pch.vnext.lookup.cache.negative-ttl:5000}")
+    private long pchVnextLookupCacheNegativeTtl;
+
+    // Entries kept for each of the participant and party lookups
+    @Value("${pch.vnext.lookup.cache.max-entries:10000}")
+    private long pchVnextLookupCacheMaxEntries;
+
+    // How long a transfer sent through /executetransfer is remembered for retries, in milliseconds
+    @Value("${pch.vnext.executetransfer.idempotency.ttl:600000}")
+    private long pchVnextExecuteTransferIdempotencyTtl;
+
+    // How long a transfer whose outcome is unknown (deadline, connection lost) is replayed as failed,
+    // in milliseconds. Retries after that are sent to the switch again.
+    @Value("${pch.vnext.executetransfer.idempotency.unknown-outcome-ttl:30000}")
+    private long pchVnextExecuteTransferUnknownOutcomeTtl;
+
+    // Transfers sent through /executetransfer remembered for retries
+    @Value("${pch.vnext.executetransfer.idempotency.max-entries:10000}")
+    private long pchVnextExecuteTransferIdempotencyMaxEntries;
+
+    // Transfers to the switch in flight for a single /executetransfer/bulk request
+    @Value("${pch.vnext.bulk.window:32}")
+    private int pchVnextBulkWindow;
+
+    // Channels, each with its own HTTP/2 connection, for the participant, party and transfer calls
+    @Value("${pch.vnext.unary.channels:1}")
+    private int pchVnextUnaryChannels;
+
+    // How a unary call picks its channel, ROUND_ROBIN or LEAST_IN_FLIGHT
+    @Value("${pch.vnext.unary.channel-selection:ROUND_ROBIN}")
+    private UnaryChannelPool.Selection pchVnextUnaryChannelSelection;
+
+    // Netty transport of the switch channels, AUTO uses native epoll when available, EPOLL or NIO
+    @Value("${pch.vnext.transport:AUTO}")
+    private VnextChannelFactory.Transport pchVnextTransport;
+
+    // Event loop threads shared by all switch channels, 0 for the Netty default
+    @Value("${pch.vnext.transport.event-loop-threads:0}")
+    private int pchVnextEventLoopThreads;
+
+    // Pooled buffers for the switch channels, false allocates unpooled buffers
+    @Value("${pch.vnext.transport.pooled-allocator:true}")
+    private boolean pchVnextPooledAllocator;
+
+    // Fixed pool running the gRPC callbacks, 0 for the gRPC default cached pool
+    @Value("${pch.vnext.transport.executor-threads:0}")
+    private int pchVnextExecutorThreads;
+
     @Autowired
     private ApacheFineract apacheFineract;
 
+    private StreamRequestDispatcher requestDispatcher;
+
     @PostConstruct
     public void initDevelopmentProperties() {
         try {
@@ -110,8 +252,14 @@ public class VnextClientConfig {
             // Validate required properties
             validateRequiredProperties();
 
-            this.vnextclient = new VnextClient(
+            this.requestDispatcher = new StreamRequestDispatcher(
+                    pchVnextPartyInfoPoolSize,
+                    pchVnextPartyInfoQueueCapacity,
+                    pchVnextTransferPoolSize,
+                    pchVnextTransferQueueCapacity
+            );
 
+            ClientIdentity identity = new ClientIdentity(
                     pchVnextFspId,
                     pchVnextClientName,
                     pchVnextClientVersion,
@@ -120,14 +268,63 @@ public class VnextClientConfig {
                     pchVnextClientCertificate,
                     pchVnextServerIntermediateCertificate,
                     pchVnextServerRootCertificate,
-                    pchVnextServerFullChainCombined,                    
-                    pchVnextMainClient,
+                    pchVnextServerFullChainCombined,
+                    pchVnextMainClient
+            );
+
+            TransportSettings transport = new TransportSettings(
                     pchVnextServerDNS,
                     pchVnextServerPort,
                     pchVnextKeepAliveTime,
                     pchVnextKeepAliveTimeout,
                     pchVnextKeepAliveTimeWithoutCalls,
-                    apacheFineract
+                    pchVnextTransport,
+                    pchVnextEventLoopThreads,
+                    pchVnextPooledAllocator,
+                    pchVnextExecutorThreads
+            );
+
+            StreamSettings stream = new StreamSettings(
+                    pchVnextStreamWriterQueueCapacity,
+                    pchVnextStreamInboundWindow,
+                    pchVnextStreamCount,
+                    pchVnextReconnectInitialBackoff,
+                    pchVnextReconnectMaxBackoff,
+                    pchVnextStandbyEnabled
+            );
+
+            HeartbeatSettings heartbeat = new HeartbeatSettings(
+                    pchVnextHeartbeatInterval,
+                    pchVnextHeartbeatTimeout,
+                    pchVnextHeartbeatFailureThreshold,
+                    pchVnextHeartbeatMaxIdle,
+                    pchVnextHeartbeatService
+            );
+
+            UnarySettings unary = new UnarySettings(
+                    pchVnextUnaryDeadline,
+                    pchVnextBatchConcurrency,
+                    pchVnextBulkWindow,
+                    pchVnextUnaryChannels,
+                    pchVnextUnaryChannelSelection
+            );
+
+            this.vnextclient = new VnextClient(
+                    identity,
+                    transport,
+                    apacheFineract,
+                    requestDispatcher,
+                    stream,
+                    new TransferIdempotencyStore(pchVnextTransferIdempotencyTtl, pchVnextTransferIdempotencyMaxEntries),
+                    new PendingRequestRegistry(pchVnextPartyInfoDeadline, pchVnextTransferDeadline),
+                    heartbeat,
+                    unary,
+                    SwitchLookupCache.forParticipants(pchVnextLookupCacheEnabled, pchVnextLookupCacheTtl,
+                            pchVnextLookupCacheNegativeTtl, pchVnextLookupCacheMaxEntries),
+                    SwitchLookupCache.forParties(pchVnextLookupCacheEnabled, pchVnextLookupCacheTtl,
+                            pchVnextLookupCacheNegativeTtl, pchVnextLookupCacheMaxEntries),
+                    new ExecuteTransferStore(pchVnextExecuteTransferIdempotencyTtl, pchVnextExecuteTransferUnknownOutcomeTtl,
+                            pchVnextExecuteTransferIdempotencyMaxEntries)
             );
 
             boolean started = vnextclient.start();
@@ -174,6 +371,9 @@ public class VnextClientConfig {
                 vnextclient.shutdown();
                 logger.info("VnextClient shutdown completed");
             }
+            if (requestDispatcher != null) {
+                requestDispatcher.shutdown();
+            }
         } catch (Exception e) {
             logger.error("Error during VnextClient shutdown: {}", e.getMessage(), e);
         }
@@ -0,0 +1,399 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import io.grpc.Channel;
+import io.grpc.ClientInterceptors;
+import io.grpc.ManagedChannel;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.mifos.grpc.proto.vnext.InteropGrpcApiGrpc;
+import org.mifos.grpc.proto.vnext.StreamClientChallengeResponse;
+import org.mifos.grpc.proto.vnext.StreamClientInitialRequest;
+import org.mifos.grpc.proto.vnext.StreamFromClientMsg;
+import org.mifos.grpc.proto.vnext.StreamServerInitialResponse;
+import org.mifos.grpc.proto.vnext.StreamServerReadyResponse;
+import org.mifos.grpc.proto.vnext.StreamToClientMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+* One authenticated StartStream to the switch. Each stream has its own channel,
+* clientId and session secret, and runs the challenge/response handshake by itself.
+* Switch requests received on the stream are handed to VnextClient, and their
+* answers go back through this stream's writer.
+* A lost stream is rebuilt on a fresh channel from the reconnect scheduler,
+* with exponential backoff and jitter between the attempts.
+*/
+public class VnextStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(VnextStream.class);
+
+    private final String name;
+    private final String clientId;
+    private final boolean mainClient;
+    private final StreamClientInitialRequest initialRequest;
+    private final CryptoAndCertHelper cryptoHelper;
+    private final HeaderClientInterceptor headerInterceptor;
+    private final StreamResponseWriter responseWriter;
+    private final int inboundWindow;
+    private final VnextClient vnextClient;
+    private final VnextChannelFactory channelFactory;
+    private final ScheduledExecutorService reconnectScheduler;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private volatile ManagedChannel channel;
+    private volatile Channel channelWithHeader;
+    private volatile InteropGrpcApiGrpc.InteropGrpcApiStub connectionToVnext;
+    private volatile ClientCallStreamObserver<StreamFromClientMsg> streamFromClientMessageObserver;
+    private volatile boolean authenticated = false;
+    private volatile boolean shuttingDown = false;
+
+    private final AtomicBoolean reconnectPending = new AtomicBoolean(false);
+    private final AtomicLong reconnectAttempts = new AtomicLong(0);
+    private volatile int consecutiveFailures = 0;
+    // When the stream was lost, 0 while it is ready
+    private volatile long disconnectedAt = 0;
+    private volatile long lastTimeToReady = -1;
+    private volatile long lastMessageReceivedAt = System.currentTimeMillis();
+
+    public record Status(String name,
+                         String clientId,
+                         boolean mainClient,
+                         boolean authenticated,
+                         long reconnectAttempts,
+                         int consecutiveFailures,
+                         long lastTimeToReadyMillis,
+                         Instant lastMessageReceivedAt) {
+    }
+
+    public VnextStream(String name, String fspId, StreamClientInitialRequest initialRequest, CryptoAndCertHelper cryptoHelper,
+                       VnextChannelFactory channelFactory, StreamSettings settings, VnextClient vnextClient,
+                       ScheduledExecutorService reconnectScheduler) {
+        this.name = name;
+        this.clientId = UUID.randomUUID().toString();
+        this.mainClient = initialRequest.getMainClient();
+        this.initialRequest = initialRequest;
+        this.cryptoHelper = cryptoHelper;
+        this.responseWriter = new StreamResponseWriter(name, settings.outgoingQueueCapacity());
+        this.inboundWindow = settings.inboundWindow();
+        this.vnextClient = vnextClient;
+        this.channelFactory = channelFactory;
+        this.reconnectScheduler = reconnectScheduler;
+        this.initialBackoff = settings.reconnectInitialBackoff();
+        this.maxBackoff = settings.reconnectMaxBackoff();
+        logger.info("Generated client ID for authentication of {} (main client: {}): {}", name, mainClient, clientId);
+
+        this.headerInterceptor = new HeaderClientInterceptor(fspId);
+        this.headerInterceptor.setClientId(this.clientId);
+
+        this.channel = channelFactory.newChannel();
+        this.channelWithHeader = ClientInterceptors.intercept(channel, headerInterceptor);
+        this.connectionToVnext = InteropGrpcApiGrpc.newStub(channelWithHeader);
+    }
+
+    public boolean start() {
+        logger.info("Starting authentication process for {} client: {}", name, clientId);
+
+        StreamFromClientMsg initialMessage = StreamFromClientMsg.newBuilder()
+                .setInitialRequest(initialRequest)
+                .build();
+
+        ClientResponseObserver<StreamFromClientMsg, StreamToClientMsg> responseObserver = new ClientResponseObserver<StreamFromClientMsg, StreamToClientMsg>() {
+
+            private ClientCallStreamObserver<StreamFromClientMsg> requestStream;
+
+            @Override
+            public void beforeStart(ClientCallStreamObserver<StreamFromClientMsg> requestStream) {
+                this.requestStream = requestStream;
+                streamFromClientMessageObserver = requestStream;
+                // Every outgoing message goes through the single writer, respecting transport readiness
+                responseWriter.bind(requestStream);
+                // Inbound messages are requested only while there is capacity to process them
+                requestStream.disableAutoRequestWithInitial(inboundWindow);
+                logger.info("Inbound flow control window of {}: {} messages", name, inboundWindow);
+            }
+
+            @Override
+            public void onNext(StreamToClientMsg streamToClientMsg) {
+                lastMessageReceivedAt = System.currentTimeMillis();
+                boolean dispatched = false;
+                try {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("=== RECEIVED SERVER MESSAGE ON {} ===", name);
+                        logger.debug("Message type: {}", streamToClientMsg.getResponseTypeCase());
+                        logger.debug("StreamMessageId: {}", streamToClientMsg.getStreamMessageId());
+                        logger.debug("PendingRequestId: {}", streamToClientMsg.getPendingRequestId());
+                        logger.debug("HasPendingRequestId: {}", streamToClientMsg.hasPendingRequestId());
+                        logger.debug("All fields: {}", streamToClientMsg.getAllFields());
+                        logger.debug("===============================");
+                    }
+                    switch (streamToClientMsg.getResponseTypeCase()) {
+                        case INITIALRESPONSE:
+                            logger.debug("Processing INITIALRESPONSE - Challenge received");
+                            handleInitialResponse(streamToClientMsg.getInitialResponse());
+                            break;
+                        case READYRESPONSE:
+                            logger.debug("Processing READYRESPONSE - Authentication complete");
+                            handleReadyResponse(streamToClientMsg.getReadyResponse());
+                            break;
+                        default:
+                            dispatched = vnextClient.onStreamMessage(VnextStream.this, streamToClientMsg, requestStream);
+                    }
+                } catch (Exception e) {
+                    logger.error("Error processing server message: {}", e.getMessage(), e);
+                } finally {
+                    // Dispatched requests give their credit back once the worker is done with them
+                    if (!dispatched) {
+                        requestStream.request(1);
+                    }
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+                logger.info("Server closed the stream {}", name);
+                clearSession();
+                if (!vnextClient.onStreamLost(VnextStream.this)) {
+                    reconnect();
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.error("Stream error occurred on {}", name, t);
+                clearSession();
+                if (!vnextClient.onStreamLost(VnextStream.this)) {
+                    reconnect();
+                }
+            }
+        };
+
+        try {
+            connectionToVnext.startStream(responseObserver);
+            responseWriter.send(initialMessage);
+            logger.info("Authentication process started successfully for {} client: {}", name, clientId);
+            return true;
+        } catch (StatusRuntimeException e) {
+            logger.error("Failed to start authentication - gRPC status: {}", e.getStatus(), e);
+            return false;
+        } catch (Exception e) {
+            logger.error("Failed to start authentication", e);
+            return false;
+        }
+    }
+
+    private void handleInitialResponse(StreamServerInitialResponse response) {
+        try {
+
+            // Validate PCH server signature
+            boolean isValid = cryptoHelper.validateSignature(this.clientId, response);
+
+            if (!isValid) {
+                logger.error("Invalid server signature received.");
+                logger.error("Expected fingerprint: {} ", cryptoHelper.getServerIntermediatePublicKeyFingerprint());
+                logger.error("Received: {} ", response.getPubKeyFingerprint());
+                throw new SecurityException("Invalid server signature");
+            }
+
+            logger.info("Server signature validated successfully");
+
+            // Sign the nonce string
+            String signedNonce = cryptoHelper.signString(response);
+
+            // Send the challenge response
+            StreamClientChallengeResponse challengeResponse = StreamClientChallengeResponse.newBuilder()
+                    .setSignedNonce(signedNonce)
+                    .build();
+
+            StreamFromClientMsg responseMsg = StreamFromClientMsg.newBuilder()
+                    .setChallengeResponse(challengeResponse)
+                    .build();
+
+            if (!responseWriter.send(responseMsg)) {
+                throw new IllegalStateException("Challenge response could not be queued");
+            }
+            logger.info("Challenge response queued for the server");
+
+        } catch (Exception e) {
+            logger.error("Error handling initial response: {}", e.getMessage(), e);
+            try {
+                if (streamFromClientMessageObserver != null) {
+                    streamFromClientMessageObserver.onError(e);
+                }
+            } catch (Exception ex) {
+                logger.error("Error closing stream after authentication failure", ex);
+            }
+        }
+    }
+
+    private void handleReadyResponse(StreamServerReadyResponse response) {
+        // Update the header interceptor using the session secret
+        headerInterceptor.setSessionSecret(response.getSessionSecret());
+
+        this.authenticated = true;
+        this.lastMessageReceivedAt = System.currentTimeMillis();
+        logger.info("Authentication complete. Session ready with secret for {} client: {}", name, clientId);
+
+        if (disconnectedAt > 0) {
+            lastTimeToReady = System.currentTimeMillis() - disconnectedAt;
+            logger.info("{} ready again {} ms after it was lost, {} attempts", name, lastTimeToReady, consecutiveFailures);
+            disconnectedAt = 0;
+        }
+        consecutiveFailures = 0;
+    }
+
+    private void clearSession() {
+        authenticated = false;
+        headerInterceptor.clearSession();
+        responseWriter.unbind();
+    }
+
+    // Queues a message for the switch on this stream, false when it could not be queued
+    public boolean send(StreamFromClientMsg message) {
+        return responseWriter.send(message);
+    }
+
+    public void shutdown() throws InterruptedException {
+        close();
+        channel.shutdown().awaitTermination(10, TimeUnit.SECONDS);
+        logger.info("{} Disconnected", name);
+    }
+
+    // Retires a stream that is already lost, there is nothing left to flush so nothing is waited for
+    public void shutdownNow() {
+        close();
+        channel.shutdownNow();
+        logger.info("{} Disconnected", name);
+    }
+
+    private void close() {
+        logger.info("Disconnecting {}", name);
+        shuttingDown = true;
+        authenticated = false;
+        headerInterceptor.clearSession();
+
+        if (streamFromClientMessageObserver != null) {
+            responseWriter.complete();
+        }
+        responseWriter.shutdown();
+    }
+
+    // Schedules a new connection attempt, never blocks the calling gRPC thread
+    public boolean reconnect() {
+        if (shuttingDown || !reconnectPending.compareAndSet(false, true)) {
+            return false;
+        }
+        if (disconnectedAt == 0) {
+            disconnectedAt = System.currentTimeMillis();
+        }
+        long delay = nextBackoff(++consecutiveFailures, initialBackoff, maxBackoff);
+        logger.info("Reconnecting {} in {} ms, attempt {}", name, delay, consecutiveFailures);
+        reconnectScheduler.schedule(this::reconnectNow, delay, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    // Exponential backoff with equal jitter, between half and the full delay
+    static long nextBackoff(int attempt, long initialBackoff, long maxBackoff) {
+        long delay = initialBackoff << Math.min(attempt - 1, 20);
+        delay = Math.min(delay > 0 ? delay : maxBackoff, maxBackoff);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private void reconnectNow() {
+        reconnectPending.set(false);
+        if (shuttingDown) {
+            return;
+        }
+        reconnectAttempts.incrementAndGet();
+        try {
+            // The old channel may be in TRANSIENT_FAILURE for a long time, start over on a new connection
+            ManagedChannel oldChannel = channel;
+            channel = channelFactory.newChannel();
+            channelWithHeader = ClientInterceptors.intercept(channel, headerInterceptor);
+            connectionToVnext = InteropGrpcApiGrpc.newStub(channelWithHeader);
+            oldChannel.shutdownNow();
+            if (!start()) {
+                reconnect();
+            }
+        } catch (Exception e) {
+            logger.error("Reconnection of {} failed", name, e);
+            reconnect();
+        }
+    }
+
+    // Cancels a stream found dead, onError then clears the session and schedules the reconnect
+    void tearDown(String reason) {
+        ClientCallStreamObserver<StreamFromClientMsg> requestStream = streamFromClientMessageObserver;
+        if (requestStream != null && !shuttingDown) {
+            logger.warn("Tearing down {}: {}", name, reason);
+            requestStream.cancel(reason, null);
+        }
+    }
+
+    // Current channel of the stream, carrying its session headers
+    Channel getChannelWithHeader() {
+        return channelWithHeader;
+    }
+
+    boolean isShuttingDown() {
+        return shuttingDown;
+    }
+
+    long getLastMessageReceivedAt() {
+        return lastMessageReceivedAt;
+    }
+
+    public boolean isAuthenticated() {
+        return authenticated && headerInterceptor.isAuthenticated();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getSessionSecret() {
+        return headerInterceptor.getSessionSecret();
+    }
+
+    public boolean isMainClient() {
+        return mainClient;
+    }
+
+    public Status getStatus() {
+        return new Status(name, clientId, mainClient, isAuthenticated(),
+                reconnectAttempts.get(), consecutiveFailures, lastTimeToReady, Instant.ofEpochMilli(lastMessageReceivedAt));
+    }
+
+    public HeaderClientInterceptor getHeaderInterceptor() {
+        return headerInterceptor;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/*
+* Runs one asynchronous call per request keeping at most window calls in
+* flight. Every completion starts the next request, so a batch is pipelined
+* over the channel instead of sent one after the other. Results keep the
+* order of the requests, a failed call is turned into a result by onFailure.
+* onResult is told about every result, with its request index, as it completes.
+*/
+class WindowedBatch<Q, R> {
+
+    private final List<Q> requests;
+    private final Function<Q, CompletableFuture<R>> call;
+    private final BiFunction<Q, Throwable, R> onFailure;
+    private final BiConsumer<Integer, R> onResult;
+    private final AtomicReferenceArray<R> results;
+    private final AtomicInteger nextIndex = new AtomicInteger(0);
+    private final AtomicInteger remaining;
+    private final CompletableFuture<List<R>> completion = new CompletableFuture<>();
+
+    private WindowedBatch(List<Q> requests, Function<Q, CompletableFuture<R>> call, BiFunction<Q, Throwable, R> onFailure,
+                          BiConsumer<Integer, R> onResult) {
+        this.requests = requests;
+        this.call = call;
+        this.onFailure = onFailure;
+        this.onResult = onResult;
+        this.results = new AtomicReferenceArray<>(requests.size());
+        this.remaining = new AtomicInteger(requests.size());
+    }
+
+    static <Q, R> CompletableFuture<List<R>> run(List<Q> requests, int window, Function<Q, CompletableFuture<R>> call,
+                                                 BiFunction<Q, Throwable, R> onFailure) {
+        return run(requests, window, call, onFailure, (index, result) -> {
+        });
+    }
+
+    static <Q, R> CompletableFuture<List<R>> run(List<Q> requests, int window, Function<Q, CompletableFuture<R>> call,
+                                                 BiFunction<Q, Throwable, R> onFailure, BiConsumer<Integer, R> onResult) {
+        if (requests.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        WindowedBatch<Q, R> batch = new WindowedBatch<>(requests, call, onFailure, onResult);
+        int lanes = Math.min(Math.max(1, window), requests.size());
+        for (int i = 0; i < lanes; i++) {
+            batch.next();
+        }
+        return batch.completion;
+    }
+
+    // Starts requests until one does not complete right away, its completion resumes the lane
+    private void next() {
+        int index;
+        while ((index = nextIndex.getAndIncrement()) < requests.size()) {
+            Q request = requests.get(index);
+            CompletableFuture<R> pending;
+            try {
+                pending = call.apply(request);
+            } catch (Exception e) {
+                pending = CompletableFuture.failedFuture(e);
+            }
+            int resultIndex = index;
+            if (pending.isDone()) {
+                pending.whenComplete((result, error) -> store(resultIndex, request, result, error));
+                continue;
+            }
+            pending.whenComplete((result, error) -> {
+                store(resultIndex, request, result, error);
+                next();
+            });
+            return;
+        }
+    }
+
+    private void store(int index, Q request, R result, Throwable error) {
+        R value;
+        try {
+            value = error == null ? result : onFailure.apply(request, error);
+            onResult.accept(index, value);
+        } catch (Exception e) {
+            completion.completeExceptionally(e);
+            return;
+        }
+        results.set(index, value);
+        if (remaining.decrementAndGet() == 0) {
+            List<R> ordered = new ArrayList<>(results.length());
+            for (int i = 0; i < results.length(); i++) {
+                ordered.add(results.get(i));
+            }
+            completion.complete(ordered);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.mifos.vnext.connector.config.InvalidTransferLineException;
+import org.mifos.vnext.connector.dto.TransferRequestDto;
+
+/*
+* NDJSON transfer requests read one line at a time. A line that is not JSON or does not
+* map to a TransferRequestDto throws InvalidTransferLineException from next(), the next
+* line is still read. Blank lines are skipped, a failed read throws UncheckedIOException.
+*/
+class TransferRequestLines implements Iterator<TransferRequestDto> {
+
+    private final BufferedReader reader;
+    private final ObjectMapper objectMapper;
+    private String line;
+    private int lineNumber = 0;
+
+    TransferRequestLines(BufferedReader reader, ObjectMapper objectMapper) {
+        this.reader = reader;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (line == null) {
+                String read = reader.readLine();
+                if (read == null) {
+                    return false;
+                }
+                lineNumber++;
+                if (!read.isBlank()) {
+                    line = read;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public TransferRequestDto next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String current = line;
+        line = null;
+        JsonNode node = null;
+        try {
+            node = objectMapper.readTree(current);
+            return objectMapper.treeToValue(node, TransferRequestDto.class);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            // A line that is JSON still tells the caller which transfer failed
+            JsonNode homeTransactionId = node != null ? node.get("homeTransactionId") : null;
+            throw new InvalidTransferLineException(homeTransactionId != null && homeTransactionId.isTextual() ? homeTransactionId.asText() : null,
+                    "Line " + lineNumber + " is not a valid transfer request: "
+                            + (e instanceof JsonProcessingException jsonError ? jsonError.getOriginalMessage() : e.getMessage()), e);
+        }
+    }
+}
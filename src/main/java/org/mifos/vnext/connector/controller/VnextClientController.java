@@ -18,7 +18,27 @@
  */
 package org.mifos.vnext.connector.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.mifos.grpc.proto.vnext.LookupParticipantRequest;
+import org.mifos.grpc.proto.vnext.LookupParticipantResponse;
+import org.mifos.grpc.proto.vnext.LookupPartyRequest;
+import org.mifos.grpc.proto.vnext.LookupPartyResponse;
+import org.mifos.grpc.proto.vnext.TransferRequest;
+import org.mifos.grpc.proto.vnext.TransferResponse;
+import org.mifos.vnext.connector.config.PendingRequestRegistry;
+import org.mifos.vnext.connector.config.VnextClient;
 import org.mifos.vnext.connector.config.VnextClientConfig;
+import org.mifos.vnext.connector.config.VnextStream;
 import org.mifos.vnext.connector.dto.ParticipantRequest;
 import org.mifos.vnext.connector.dto.ParticipantResponse;
 import org.mifos.vnext.connector.dto.PartyRequestDto;
@@ -28,6 +48,7 @@ import org.mifos.vnext.connector.dto.TransferResponseDto;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -38,9 +59,20 @@ import org.springframework.web.bind.annotation.*;
 public class VnextClientController {
     
     private static Logger logger = LoggerFactory.getLogger(VnextClientController.class);
+
+    // Callers sending this content type use the switch messages as bodies, without the DTO layer
+    private static final String APPLICATION_PROTOBUF_VALUE = "application/x-protobuf";
     
     @Autowired
     private VnextClientConfig vnextClientConfig;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Cache-Control: no-cache asks for a fresh switch lookup instead of a cached answer
+    private static boolean bypassCache(String cacheControl) {
+        return cacheControl != null && cacheControl.contains("no-cache");
+    }
     
     /*
     * API Rest Lookup Participant Information
@@ -48,16 +80,19 @@ public class VnextClientController {
     @PostMapping(path = "/participant",
                 consumes = MediaType.APPLICATION_JSON_VALUE,
                 produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<ParticipantResponse> getParticipant(@RequestBody ParticipantRequest participantRequest) {
-        //Lookup Participant Information
-        ParticipantResponse participantResponse = vnextClientConfig.getVNextClient().getParticipant(participantRequest);
-        //Prepare the API Rest Response
-        if(!participantResponse.isExecutionStatus()){        
-            //Return the failure response
-            return new ResponseEntity<>(participantResponse, HttpStatus.BAD_REQUEST);
-        }
-        //Return the success response
-        return new ResponseEntity<>(participantResponse, HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<ParticipantResponse>> getParticipant(@RequestBody ParticipantRequest participantRequest,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl) {
+        //Lookup Participant Information, the request thread is released while the switch answers
+        return vnextClientConfig.getVNextClient().getParticipantAsync(participantRequest, bypassCache(cacheControl))
+                .thenApply(participantResponse -> {
+                    //Prepare the API Rest Response
+                    if(!participantResponse.isExecutionStatus()){
+                        //Return the failure response
+                        return new ResponseEntity<>(participantResponse, HttpStatus.BAD_REQUEST);
+                    }
+                    //Return the success response
+                    return new ResponseEntity<>(participantResponse, HttpStatus.OK);
+                });
     }
     
     /*
@@ -66,38 +101,188 @@ public class VnextClientController {
     @PostMapping(path = "/partyinfo",
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<PartyResponseDto> getPartyInfo(
-            @RequestBody PartyRequestDto partyRequest) {
+    public CompletableFuture<ResponseEntity<PartyResponseDto>> getPartyInfo(
+            @RequestBody PartyRequestDto partyRequest,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl) {
 
         String sourceFspId = vnextClientConfig.getPchVnextFspId();
-        //Lookup Party Information
-        PartyResponseDto partyResponse = vnextClientConfig.getVNextClient()
-                .getPartyInfo(partyRequest, sourceFspId); // ← Pasar sourceFspId
-
-        //Prepare the API Rest Response
-        if(!partyResponse.isExecutionStatus()){
-            //Return the failure response
-            return new ResponseEntity<>(partyResponse, HttpStatus.BAD_REQUEST);
-        }
-        //Return the success response
-        return new ResponseEntity<>(partyResponse, HttpStatus.OK);
+        //Lookup Party Information, the request thread is released while the switch answers
+        return vnextClientConfig.getVNextClient()
+                .getPartyInfoAsync(partyRequest, sourceFspId, bypassCache(cacheControl)) // ← Pasar sourceFspId
+                .thenApply(partyResponse -> {
+                    //Prepare the API Rest Response
+                    if(!partyResponse.isExecutionStatus()){
+                        //Return the failure response
+                        return new ResponseEntity<>(partyResponse, HttpStatus.BAD_REQUEST);
+                    }
+                    //Return the success response
+                    return new ResponseEntity<>(partyResponse, HttpStatus.OK);
+                });
     }
     
+    /*
+    * API Rest Lookup Participant Information for several parties, every item carries its own status
+    */
+    @PostMapping(path = "/participant/batch",
+                consumes = MediaType.APPLICATION_JSON_VALUE,
+                produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<List<ParticipantResponse>>> getParticipantBatch(@RequestBody List<ParticipantRequest> participantRequests,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl) {
+        return vnextClientConfig.getVNextClient().getParticipantBatch(participantRequests, bypassCache(cacheControl))
+                .thenApply(participantResponses -> new ResponseEntity<>(participantResponses, HttpStatus.OK));
+    }
+
+    /*
+    * API Rest Lookup Party Information for several parties, every item carries its own status
+    */
+    @PostMapping(path = "/partyinfo/batch",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<List<PartyResponseDto>>> getPartyInfoBatch(
+            @RequestBody List<PartyRequestDto> partyRequests,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl) {
+
+        String sourceFspId = vnextClientConfig.getPchVnextFspId();
+        return vnextClientConfig.getVNextClient().getPartyInfoBatch(partyRequests, sourceFspId, bypassCache(cacheControl))
+                .thenApply(partyResponses -> new ResponseEntity<>(partyResponses, HttpStatus.OK));
+    }
+
     /*
     * API Rest Execute Money Transfer
     */
     @PostMapping(path = "/executetransfer",
                 consumes = MediaType.APPLICATION_JSON_VALUE,
                 produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<TransferResponseDto> executeTransfer(@RequestBody TransferRequestDto transferRequest) {
-        //Extecute Transfer
-        TransferResponseDto transferResponse = vnextClientConfig.getVNextClient().executeTransfer(transferRequest);        
-        //Prepare the API Rest Response
-        if(!transferResponse.isExecutionStatus()){        
-            //Return the failure response
-            return new ResponseEntity<>(transferResponse, HttpStatus.BAD_REQUEST);
+    public CompletableFuture<ResponseEntity<TransferResponseDto>> executeTransfer(@RequestBody TransferRequestDto transferRequest) {
+        //Extecute Transfer, the request thread is released while the switch answers
+        return vnextClientConfig.getVNextClient().executeTransferAsync(transferRequest)
+                .thenApply(transferResponse -> {
+                    //Prepare the API Rest Response
+                    if(!transferResponse.isExecutionStatus()){
+                        //Return the failure response
+                        return new ResponseEntity<>(transferResponse, HttpStatus.BAD_REQUEST);
+                    }
+                    //Return the success response
+                    return new ResponseEntity<>(transferResponse, HttpStatus.OK);
+                });
+    }
+
+    /*
+    * API Rest Execute Money Transfers from a stream of NDJSON TransferRequestDto lines.
+    * Every TransferResponseDto is written back as a line as soon as its transfer completes,
+    * so the order of the results may differ from the order of the requests. A line that is
+    * not a valid request gets a failed result naming its line number, the others go on.
+    */
+    @PostMapping(path = "/executetransfer/bulk",
+                consumes = MediaType.APPLICATION_NDJSON_VALUE,
+                produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void executeTransferBulk(InputStream requestBody, HttpServletResponse response) throws IOException, InterruptedException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(requestBody, StandardCharsets.UTF_8))) {
+            TransferRequestLines transferRequests = new TransferRequestLines(reader, objectMapper);
+            vnextClientConfig.getVNextClient().executeTransfers(transferRequests, transferResponse -> {
+                // Runs on this request thread, the only writer of the response
+                try {
+                    out.write(objectMapper.writeValueAsBytes(transferResponse));
+                    out.write('\n');
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Every transfer already sent completed first, the results that could not be written were logged
+            logger.error("Bulk transfer aborted, the request could not be read or the results written: {}", e.getMessage());
+            throw e.getCause();
         }
-        //Return the success response
-        return new ResponseEntity<>(transferResponse, HttpStatus.OK);
+    }
+
+    /*
+    * API Rest Lookup Participant Information with protobuf bodies
+    */
+    @PostMapping(path = "/participant",
+                consumes = APPLICATION_PROTOBUF_VALUE,
+                produces = APPLICATION_PROTOBUF_VALUE)
+    public CompletableFuture<ResponseEntity<LookupParticipantResponse>> lookupParticipant(@RequestBody LookupParticipantRequest participantRequest,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl) {
+        return vnextClientConfig.getVNextClient().lookupParticipantAsync(participantRequest, bypassCache(cacheControl))
+                .handle((participantResponse, error) -> {
+                    if (error != null) {
+                        logger.error("PARTICIPANTREQUEST failure: {}", error.getMessage());
+                        return new ResponseEntity<>(LookupParticipantResponse.newBuilder()
+                                .setError(VnextClient.switchCallError(error))
+                                .build(), HttpStatus.BAD_REQUEST);
+                    }
+                    return new ResponseEntity<>(participantResponse, participantResponse.hasFspId() ? HttpStatus.OK : HttpStatus.BAD_REQUEST);
+                });
+    }
+
+    /*
+    * API Rest Lookup Party Information with protobuf bodies
+    */
+    @PostMapping(path = "/partyinfo",
+                consumes = APPLICATION_PROTOBUF_VALUE,
+                produces = APPLICATION_PROTOBUF_VALUE)
+    public CompletableFuture<ResponseEntity<LookupPartyResponse>> lookupParty(@RequestBody LookupPartyRequest partyRequest,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl) {
+        return vnextClientConfig.getVNextClient().lookupPartyAsync(partyRequest, bypassCache(cacheControl))
+                .handle((partyResponse, error) -> {
+                    if (error != null) {
+                        logger.error("PARTYINFOREQUEST failure: {}", error.getMessage());
+                        return new ResponseEntity<>(LookupPartyResponse.newBuilder()
+                                .setError(VnextClient.switchCallError(error))
+                                .build(), HttpStatus.BAD_REQUEST);
+                    }
+                    return new ResponseEntity<>(partyResponse, partyResponse.hasError() ? HttpStatus.BAD_REQUEST : HttpStatus.OK);
+                });
+    }
+
+    /*
+    * API Rest Execute Money Transfer with protobuf bodies
+    */
+    @PostMapping(path = "/executetransfer",
+                consumes = APPLICATION_PROTOBUF_VALUE,
+                produces = APPLICATION_PROTOBUF_VALUE)
+    public CompletableFuture<ResponseEntity<TransferResponse>> executeTransferRequest(@RequestBody TransferRequest transferRequest) {
+        return vnextClientConfig.getVNextClient().executeTransferRequestAsync(transferRequest)
+                .handle((transferResponse, error) -> {
+                    if (error != null) {
+                        logger.error("ACCEPTTRANSFERREQUEST failure: {}", error.getMessage());
+                        return new ResponseEntity<>(TransferResponse.newBuilder()
+                                .setHomeTransactionId(transferRequest.getHomeTransactionId())
+                                .setError(VnextClient.switchCallError(error))
+                                .build(), HttpStatus.BAD_REQUEST);
+                    }
+                    return new ResponseEntity<>(transferResponse, transferResponse.hasError() ? HttpStatus.BAD_REQUEST : HttpStatus.OK);
+                });
+    }
+
+    /*
+    * API Rest Switch requests in progress
+    */
+    @GetMapping(path = "/pendingrequests",
+                produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<PendingRequestRegistry.PendingRequest>> getPendingRequests() {
+        return new ResponseEntity<>(vnextClientConfig.getVNextClient().getPendingRequests(), HttpStatus.OK);
+    }
+
+    /*
+    * API Rest Lookup cache, dispatcher, failover and replay counters
+    */
+    @GetMapping(path = "/metrics",
+                produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<VnextClient.Metrics> getMetrics() {
+        return new ResponseEntity<>(vnextClientConfig.getVNextClient().getMetrics(), HttpStatus.OK);
+    }
+
+    /*
+    * API Rest Switch streams state and reconnect metrics
+    */
+    @GetMapping(path = "/streams",
+                produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<VnextStream.Status>> getStreams() {
+        return new ResponseEntity<>(vnextClientConfig.getVNextClient().getStreamStatus(), HttpStatus.OK);
     }
 }
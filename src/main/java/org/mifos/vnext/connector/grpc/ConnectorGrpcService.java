@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.grpc;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import org.mifos.grpc.proto.connector.ConnectorGrpcApiGrpc;
+import org.mifos.grpc.proto.connector.LookupPartiesItem;
+import org.mifos.grpc.proto.connector.LookupPartiesRequest;
+import org.mifos.grpc.proto.connector.LookupParticipantsItem;
+import org.mifos.grpc.proto.connector.LookupParticipantsRequest;
+import org.mifos.grpc.proto.vnext.LookupParticipantRequest;
+import org.mifos.grpc.proto.vnext.LookupParticipantResponse;
+import org.mifos.grpc.proto.vnext.LookupPartyRequest;
+import org.mifos.grpc.proto.vnext.LookupPartyResponse;
+import org.mifos.grpc.proto.vnext.TransferRequest;
+import org.mifos.grpc.proto.vnext.TransferResponse;
+import org.mifos.vnext.connector.config.VnextClientConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/*
+* gRPC ingress for internal callers, the same lookups and transfers as the REST
+* API without the JSON and DTO mapping: requests are the switch messages and are
+* passed to VnextClient as they are. Served on spring.grpc.server.port.
+*/
+@Service
+public class ConnectorGrpcService extends ConnectorGrpcApiGrpc.ConnectorGrpcApiImplBase {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectorGrpcService.class);
+
+    @Autowired
+    private VnextClientConfig vnextClientConfig;
+
+    @Override
+    public void lookupParticipant(LookupParticipantRequest request, StreamObserver<LookupParticipantResponse> responseObserver) {
+        respond(() -> vnextClientConfig.getVNextClient().lookupParticipantAsync(request, false), responseObserver);
+    }
+
+    @Override
+    public void lookupParty(LookupPartyRequest request, StreamObserver<LookupPartyResponse> responseObserver) {
+        respond(() -> vnextClientConfig.getVNextClient().lookupPartyAsync(request, false), responseObserver);
+    }
+
+    @Override
+    public void executeTransfer(TransferRequest request, StreamObserver<TransferResponse> responseObserver) {
+        respond(() -> vnextClientConfig.getVNextClient().executeTransferRequestAsync(request), responseObserver);
+    }
+
+    @Override
+    public void lookupParticipants(LookupParticipantsRequest request, StreamObserver<LookupParticipantsItem> responseObserver) {
+        ServerCallStreamObserver<LookupParticipantsItem> itemStream = (ServerCallStreamObserver<LookupParticipantsItem>) responseObserver;
+        itemStream.setOnCancelHandler(() -> logger.debug("Participant batch cancelled by the caller"));
+        respondStreaming(() -> vnextClientConfig.getVNextClient().lookupParticipantsAsync(request.getRequestsList(),
+                (index, response) -> send(itemStream, LookupParticipantsItem.newBuilder()
+                        .setIndex(index)
+                        .setResponse(response)
+                        .build())), itemStream);
+    }
+
+    @Override
+    public void lookupParties(LookupPartiesRequest request, StreamObserver<LookupPartiesItem> responseObserver) {
+        ServerCallStreamObserver<LookupPartiesItem> itemStream = (ServerCallStreamObserver<LookupPartiesItem>) responseObserver;
+        itemStream.setOnCancelHandler(() -> logger.debug("Party batch cancelled by the caller"));
+        respondStreaming(() -> vnextClientConfig.getVNextClient().lookupPartiesAsync(request.getRequestsList(),
+                (index, response) -> send(itemStream, LookupPartiesItem.newBuilder()
+                        .setIndex(index)
+                        .setResponse(response)
+                        .build())), itemStream);
+    }
+
+    private static <T> void respond(Supplier<CompletableFuture<T>> call, StreamObserver<T> responseObserver) {
+        CompletableFuture<T> response;
+        try {
+            response = call.get();
+        } catch (Exception e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((value, error) -> {
+            if (error != null) {
+                responseObserver.onError(toStatus(error).asRuntimeException());
+            } else {
+                responseObserver.onNext(value);
+                responseObserver.onCompleted();
+            }
+        });
+    }
+
+    private static <T> void respondStreaming(Supplier<CompletableFuture<Void>> batch, ServerCallStreamObserver<T> itemStream) {
+        CompletableFuture<Void> completion;
+        try {
+            completion = batch.get();
+        } catch (Exception e) {
+            completion = CompletableFuture.failedFuture(e);
+        }
+        completion.whenComplete((ignored, error) -> {
+            synchronized (itemStream) {
+                if (itemStream.isCancelled()) {
+                    return;
+                }
+                if (error != null) {
+                    itemStream.onError(toStatus(error).asRuntimeException());
+                } else {
+                    itemStream.onCompleted();
+                }
+            }
+        });
+    }
+
+    // Items complete on different threads and StreamObserver is not thread-safe
+    private static <T> void send(ServerCallStreamObserver<T> itemStream, T item) {
+        synchronized (itemStream) {
+            if (!itemStream.isCancelled()) {
+                itemStream.onNext(item);
+            }
+        }
+    }
+
+    private static Status toStatus(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof IllegalStateException) {
+            // vNext client not authenticated yet
+            return Status.UNAVAILABLE.withDescription(cause.getMessage());
+        }
+        Status status = Status.fromThrowable(cause);
+        if (status.getCode() == Status.Code.UNKNOWN) {
+            logger.error("Connector gRPC call failure: {}", cause.getMessage(), cause);
+            return Status.INTERNAL.withDescription(cause.getMessage());
+        }
+        return status;
+    }
+}
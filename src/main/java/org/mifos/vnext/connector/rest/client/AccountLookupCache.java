@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.rest.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.mifos.vnext.connector.dto.AccountLookupServiceResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/*
+* Keeps recent /quickals answers keyed by tenant and party id, so the lookup
+* done for a PARTYINFOREQUEST is reused by the transfer that usually follows.
+* Accounts that were not found are cached as well, with a shorter TTL.
+* Concurrent misses for the same party share a single Fineract call.
+*/
+@Component
+public class AccountLookupCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccountLookupCache.class);
+
+    @Value("${fineract.lookup.cache.enabled:true}")
+    private boolean enabled;
+
+    // Time to live of a found account, in milliseconds
+    @Value("${fineract.lookup.cache.ttl:60000}")
+    private long ttl;
+
+    // Time to live of a not found account, in milliseconds
+    @Value("${fineract.lookup.cache.negative-ttl:5000}")
+    private long negativeTtl;
+
+    @Value("${fineract.lookup.cache.max-entries:10000}")
+    private long maxEntries;
+
+    private final Ticker ticker;
+    private Cache<LookupKey, AccountLookupServiceResponse> cache;
+
+    // Lookups currently waiting on Fineract, joined by callers asking for the same party
+    private final ConcurrentMap<LookupKey, CompletableFuture<AccountLookupServiceResponse>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedCounter = new AtomicLong(0);
+
+    private record LookupKey(String tenant, String partyId) {
+    }
+
+    public AccountLookupCache() {
+        this.ticker = Ticker.systemTicker();
+    }
+
+    AccountLookupCache(boolean enabled, long ttl, long negativeTtl, long maxEntries, Ticker ticker) {
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.maxEntries = maxEntries;
+        this.ticker = ticker;
+        init();
+    }
+
+    @PostConstruct
+    public void init() {
+        LOGGER.info("Account lookup cache enabled: {}, ttl: {} ms, negative ttl: {} ms, max entries: {}",
+                enabled, ttl, negativeTtl, maxEntries);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .ticker(ticker)
+                .expireAfter(new Expiry<LookupKey, AccountLookupServiceResponse>() {
+                    @Override
+                    public long expireAfterCreate(LookupKey key, AccountLookupServiceResponse value, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(isFound(value) ? ttl : negativeTtl);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(LookupKey key, AccountLookupServiceResponse value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(LookupKey key, AccountLookupServiceResponse value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    public AccountLookupServiceResponse get(String tenant, String partyId) {
+        if (!enabled) {
+            return null;
+        }
+        AccountLookupServiceResponse cached = cache.getIfPresent(new LookupKey(tenant, partyId));
+        LOGGER.debug("Account lookup cache {} for {}/{}", cached != null ? "hit" : "miss", tenant, partyId);
+        return cached;
+    }
+
+    // Returns the cached answer, joins a lookup already in flight for the same party,
+    // or starts a new one with the given loader and caches its result.
+    public CompletableFuture<AccountLookupServiceResponse> load(String tenant, String partyId,
+                                                                Supplier<CompletableFuture<AccountLookupServiceResponse>> loader) {
+        AccountLookupServiceResponse cached = get(tenant, partyId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        LookupKey key = new LookupKey(tenant, partyId);
+        CompletableFuture<AccountLookupServiceResponse> lookup = new CompletableFuture<>();
+        CompletableFuture<AccountLookupServiceResponse> existing = inFlight.putIfAbsent(key, lookup);
+        if (existing != null) {
+            coalescedCounter.incrementAndGet();
+            LOGGER.debug("Joining lookup in flight for {}/{}", tenant, partyId);
+            return existing.copy();
+        }
+        CompletableFuture<AccountLookupServiceResponse> loaded;
+        try {
+            loaded = loader.get();
+        } catch (Exception e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+        loaded.whenComplete((response, error) -> {
+            // Cache first, so a caller arriving after the removal finds the answer
+            if (error == null) {
+                put(tenant, partyId, response);
+            }
+            inFlight.remove(key, lookup);
+            if (error != null) {
+                lookup.completeExceptionally(error);
+            } else {
+                lookup.complete(response);
+            }
+        });
+        return lookup.copy();
+    }
+
+    public void put(String tenant, String partyId, AccountLookupServiceResponse response) {
+        if (enabled && response != null) {
+            cache.put(new LookupKey(tenant, partyId), response);
+        }
+    }
+
+    public void invalidate(String tenant, String partyId) {
+        cache.invalidate(new LookupKey(tenant, partyId));
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    // Lookups answered by joining a call already in flight
+    public long getCoalescedCount() {
+        return coalescedCounter.get();
+    }
+
+    public static boolean isFound(AccountLookupServiceResponse response) {
+        return response.getEntityAccountNo() != null;
+    }
+}
@@ -18,39 +18,59 @@
  */
 package org.mifos.vnext.connector.rest.client;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.entity.AbstractBinAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http.nio.support.BasicResponseConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
 import org.mifos.grpc.proto.vnext.ServerAcceptTransferRequest;
 import org.mifos.grpc.proto.vnext.ServerPartyInfoRequest;
 import java.math.BigDecimal;
 import org.mifos.vnext.connector.dto.AccountDepositServiceRequest;
 import org.mifos.vnext.connector.dto.AccountLookupServiceRequest;
+import org.mifos.vnext.connector.rest.client.FineractJsonCodec.ResponseTokens;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.web.client.RestTemplate;
 
-import java.net.URI;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 import org.mifos.vnext.connector.dto.AccountDepositServiceResponse;
 import org.mifos.vnext.connector.dto.AccountLookupServiceResponse;
 import org.mifos.vnext.connector.dto.AccountWithdrawalServiceRequest;
 import org.mifos.vnext.connector.dto.AccountWithdrawalServiceResponse;
-import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 
 @Service
 public class ApacheFineract{
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ApacheFineract.class);
 
+    // Initial size of a request body buffer, Fineract requests are a few hundred bytes
+    private static final int REQUEST_BUFFER_SIZE = 512;
+
     @Value("${fineract.api.base-url}")
     private String fineractApiBaseUrl;
 
@@ -60,42 +80,61 @@ public class ApacheFineract{
     @Value("${fineract.api.password}")
     private String password;
 
-    static RestTemplate restTemplate = new RestTemplate();  
+    // Pooled non-blocking keep-alive client, see FineractHttpClientConfig
+    @Autowired
+    private CloseableHttpAsyncClient fineractHttpAsyncClient;
+
+    @Autowired
+    private AccountLookupCache accountLookupCache;
+
+    @Autowired
+    private FineractJsonCodec fineractJsonCodec;
+
+    public CompletableFuture<AccountLookupServiceResponse> findClientAccountAsync(ServerPartyInfoRequest request) {
+        return accountLookupCache.load(request.getDestinationFspId(), request.getPartyId(), () ->
+                sendPostRequestAsync("/quickals", buildLookupRequest(request), this::toAccountLookupResponse));
+    }
+
+    public CompletableFuture<AccountDepositServiceResponse> depositToClientAccountAsync(ServerAcceptTransferRequest request, AccountLookupServiceResponse serverPartyInfoRequest) {
+        return sendPostRequestAsync("/deposit", buildDepositRequest(request, serverPartyInfoRequest), this::toDepositResponse)
+                .whenComplete((response, error) -> invalidateLookup(request.getTo().getFspId(), request.getTo().getIdValue(), error));
+    }
+
+    public CompletableFuture<AccountWithdrawalServiceResponse> withdrawalFromClientAccountAsync(ServerAcceptTransferRequest request, AccountLookupServiceResponse serverPartyInfoRequest) {
+        return sendPostRequestAsync("/withdrawal", buildWithdrawalRequest(request, serverPartyInfoRequest), this::toWithdrawalResponse)
+                .whenComplete((response, error) -> invalidateLookup(request.getFrom().getFspId(), request.getFrom().getIdValue(), error));
+    }
+
+    // A rejected deposit or withdrawal may mean the cached account is no longer valid
+    private void invalidateLookup(String tenant, String partyId, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof HttpClientErrorException) {
+            LOGGER.debug("Invalidating cached account {}/{} after {}", tenant, partyId, cause.getMessage());
+            accountLookupCache.invalidate(tenant, partyId);
+        }
+    }
 
-    public AccountLookupServiceResponse findClientAccount(ServerPartyInfoRequest request) throws Exception {
-        String regex = "[,\\.\\s]";
-        String displayName ="";
-        Integer accountNo = 0;
-        String accountNoStr="";
+    private AccountLookupServiceRequest buildLookupRequest(ServerPartyInfoRequest request) {
         AccountLookupServiceRequest accountLookupServiceRequest = new AccountLookupServiceRequest();
         accountLookupServiceRequest.setAccount(request.getPartyId());
         accountLookupServiceRequest.setFspId(request.getDestinationFspId());
         accountLookupServiceRequest.setTenant(request.getDestinationFspId());
-        ResponseEntity<JsonNode> responseFindClientAccount = sendPostRequest("/quickals", accountLookupServiceRequest);   
-        AccountLookupServiceResponse accountLookupServiceResponse = new AccountLookupServiceResponse();
-        if(responseFindClientAccount.getStatusCode() == HttpStatus.OK ){
-            try {
-                LOGGER.debug("Account Lookup Service Response "+responseFindClientAccount.getBody().toPrettyString());                
-                displayName = responseFindClientAccount.getBody().get(0).get("parentName").asText();
-                String[] myName = displayName.split(regex);
-                accountLookupServiceResponse.setFirstName(myName[0]);
-                accountLookupServiceResponse.setLastName(myName[1]);
-                accountNo = responseFindClientAccount.getBody().get(0).get("entityId").intValue();
-                accountNoStr = responseFindClientAccount.getBody().get(0).get("entityAccountNo").asText();                
-                accountLookupServiceResponse.setEntityId(accountNo);
-                accountLookupServiceResponse.setEntityAccountNo(accountNoStr);
-            }
-            catch(Exception e){
-                LOGGER.error("Error "+e.getMessage());
-                LOGGER.error(responseFindClientAccount.getBody().toString());
-            }
+        return accountLookupServiceRequest;
+    }
+
+    // Only an empty /quickals array means not found. Any other answer that does not parse fails
+    // the lookup, so a Fineract or codec failure is never cached as a missing account.
+    private AccountLookupServiceResponse toAccountLookupResponse(HttpStatusCode statusCode, ResponseTokens body) throws IOException {
+        if (statusCode != HttpStatus.OK) {
+            throw new IOException("Unexpected account lookup status " + statusCode.value());
         }
+        AccountLookupServiceResponse accountLookupServiceResponse = fineractJsonCodec.readLookupResponse(body);
+        LOGGER.debug("Account Lookup Service Response entityId {} entityAccountNo {}",
+                accountLookupServiceResponse.getEntityId(), accountLookupServiceResponse.getEntityAccountNo());
         return accountLookupServiceResponse;
     }
 
-    public AccountDepositServiceResponse depositToClientAccount(ServerAcceptTransferRequest request, AccountLookupServiceResponse serverPartyInfoRequest) throws Exception {
-      
-        
+    private AccountDepositServiceRequest buildDepositRequest(ServerAcceptTransferRequest request, AccountLookupServiceResponse serverPartyInfoRequest) {
         String currentDate = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
 
         // Data transfer preparation
@@ -108,38 +147,31 @@ public class ApacheFineract{
         depositRequest.setDateFormat("yyyy-MM-dd'T'HH:mm:ss");
         depositRequest.setTransactionAmount(new BigDecimal(request.getAmount().getAmount()));
         depositRequest.setPaymentTypeId(1);
-        depositRequest.setAccount(serverPartyInfoRequest.getEntityAccountNo());        
-        depositRequest.setAccountNumber(serverPartyInfoRequest.getEntityId());        
+        depositRequest.setAccount(serverPartyInfoRequest.getEntityAccountNo());
+        depositRequest.setAccountNumber(serverPartyInfoRequest.getEntityId());
         depositRequest.setNote(request.getNote());
         depositRequest.setRoutingCode(request.getHomeTransactionId());
         depositRequest.setBankNumber(request.getFrom().getFspId());
         depositRequest.setReceiptNumber(request.getHomeTransactionId());
         depositRequest.setLocale("en");
-        
-        ResponseEntity<JsonNode> responseDeposit = sendPostRequest("/deposit", depositRequest);           
-        AccountDepositServiceResponse accountDepositServiceResponse = new AccountDepositServiceResponse();
-        
-        if(responseDeposit.getStatusCode() == HttpStatus.OK ){
+        return depositRequest;
+    }
+
+    private AccountDepositServiceResponse toDepositResponse(HttpStatusCode statusCode, ResponseTokens body) {
+        if(statusCode == HttpStatus.OK ){
             try {
-                LOGGER.debug("Account Lookup Service Response "+responseDeposit.getBody());                
-                accountDepositServiceResponse.setOfficeId(responseDeposit.getBody().get("officeId").intValue());
-                accountDepositServiceResponse.setClientId(responseDeposit.getBody().get("clientId").intValue());
-                accountDepositServiceResponse.setSavingsId(responseDeposit.getBody().get("savingsId").intValue());
-                accountDepositServiceResponse.setResourceId(responseDeposit.getBody().get("resourceId").intValue());
-                accountDepositServiceResponse.setTransactionStatus("success");
+                AccountDepositServiceResponse accountDepositServiceResponse = fineractJsonCodec.readDepositResponse(body);
+                LOGGER.debug("Account Deposit Service Response resourceId {}", accountDepositServiceResponse.getResourceId());
+                return accountDepositServiceResponse;
             }
             catch(Exception e){
                 LOGGER.error("Error "+e.getMessage());
-                LOGGER.error(responseDeposit.getBody().toString());
             }
         }
-        return accountDepositServiceResponse;
-        
+        return new AccountDepositServiceResponse();
     }
-    
-    public AccountWithdrawalServiceResponse withdrawalFromClientAccount(ServerAcceptTransferRequest request, AccountLookupServiceResponse serverPartyInfoRequest) throws Exception {
-      
-        
+
+    private AccountWithdrawalServiceRequest buildWithdrawalRequest(ServerAcceptTransferRequest request, AccountLookupServiceResponse serverPartyInfoRequest) {
         String currentDate = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
 
         // Data transfer preparation
@@ -152,52 +184,176 @@ public class ApacheFineract{
         withdrawalRequest.setDateFormat("yyyy-MM-dd'T'HH:mm:ss");
         withdrawalRequest.setTransactionAmount(new BigDecimal(request.getAmount().getAmount()));
         withdrawalRequest.setPaymentTypeId(1);
-        withdrawalRequest.setAccount(serverPartyInfoRequest.getEntityAccountNo());        
-        withdrawalRequest.setAccountNumber(serverPartyInfoRequest.getEntityId());        
+        withdrawalRequest.setAccount(serverPartyInfoRequest.getEntityAccountNo());
+        withdrawalRequest.setAccountNumber(serverPartyInfoRequest.getEntityId());
         withdrawalRequest.setNote(request.getNote());
         withdrawalRequest.setRoutingCode(request.getHomeTransactionId());
         withdrawalRequest.setBankNumber(request.getFrom().getFspId());
         withdrawalRequest.setReceiptNumber(request.getHomeTransactionId());
         withdrawalRequest.setLocale("en");
-        
-        ResponseEntity<JsonNode> responseDeposit = sendPostRequest("/withdrawal", withdrawalRequest);           
-        AccountWithdrawalServiceResponse accountWithdrawalServiceResponse = new AccountWithdrawalServiceResponse();
-        
-        if(responseDeposit.getStatusCode() == HttpStatus.OK ){
+        return withdrawalRequest;
+    }
+
+    private AccountWithdrawalServiceResponse toWithdrawalResponse(HttpStatusCode statusCode, ResponseTokens body) {
+        if(statusCode == HttpStatus.OK ){
             try {
-                LOGGER.debug("Account Lookup Service Response "+responseDeposit.getBody());                
-                accountWithdrawalServiceResponse.setOfficeId(responseDeposit.getBody().get("officeId").intValue());
-                accountWithdrawalServiceResponse.setClientId(responseDeposit.getBody().get("clientId").intValue());
-                accountWithdrawalServiceResponse.setSavingsId(responseDeposit.getBody().get("savingsId").intValue());
-                accountWithdrawalServiceResponse.setResourceId(responseDeposit.getBody().get("resourceId").intValue());                
+                AccountWithdrawalServiceResponse accountWithdrawalServiceResponse = fineractJsonCodec.readWithdrawalResponse(body);
+                LOGGER.debug("Account Withdrawal Service Response resourceId {}", accountWithdrawalServiceResponse.getResourceId());
+                return accountWithdrawalServiceResponse;
             }
             catch(Exception e){
                 LOGGER.error("Error "+e.getMessage());
-                LOGGER.error(responseDeposit.getBody().toString());
             }
         }
-        return accountWithdrawalServiceResponse;
-        
+        return new AccountWithdrawalServiceResponse();
     }
 
-    private ResponseEntity<JsonNode> sendPostRequest(String path, Object requestBody) throws Exception {
+    // Maps a 2xx answer, a mapper that throws fails the call
+    @FunctionalInterface
+    private interface ResponseMapper<T> {
+        T map(HttpStatusCode statusCode, ResponseTokens body) throws IOException;
+    }
+
+    // Everything runs on the I/O reactor threads, no thread blocks on a body. The request is written by
+    // the codec before the call, the response body is tokenized as it arrives and mapped once complete.
+    // Non 2xx answers complete exceptionally with the Spring HttpStatusCodeException types, a body
+    // the mapper can not parse with its JsonProcessingException.
+    private <T> CompletableFuture<T> sendPostRequestAsync(String path, Object requestBody, ResponseMapper<T> responseMapper) {
         String url = fineractApiBaseUrl + path;
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            ByteArrayOutputStream requestBytes = new ByteArrayOutputStream(REQUEST_BUFFER_SIZE);
+            fineractJsonCodec.writeRequest(requestBody, requestBytes);
+            AsyncRequestProducer httpRequest = AsyncRequestBuilder.post(url)
+                    .setHeader(HttpHeaders.AUTHORIZATION, getBasicAuthenticationHeader(username, password))
+                    .setEntity(AsyncEntityProducers.create(requestBytes.toByteArray(), ContentType.APPLICATION_JSON))
+                    .build();
+            LOGGER.debug("Sending async request to {}", url);
+
+            fineractHttpAsyncClient.execute(httpRequest, new StreamingResponseConsumer(fineractJsonCodec), new FutureCallback<Message<HttpResponse, ResponseBody>>() {
+                @Override
+                public void completed(Message<HttpResponse, ResponseBody> response) {
+                    try {
+                        result.complete(mapResponse(response.getHead(), response.getBody(), responseMapper));
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    result.completeExceptionally(new ResourceAccessException("I/O error on POST request for \"" + url + "\": " + ex.getMessage(),
+                            ex instanceof IOException ioException ? ioException : new IOException(ex)));
+                }
+
+                @Override
+                public void cancelled() {
+                    result.cancel(false);
+                }
+            });
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.set("Authorization", getBasicAuthenticationHeader(username, password));
+    // An answer without a body maps like an empty one
+    private <T> T mapResponse(HttpResponse response, ResponseBody body, ResponseMapper<T> responseMapper) throws IOException {
+        HttpStatusCode statusCode = HttpStatusCode.valueOf(response.getCode());
+        if (statusCode.is4xxClientError()) {
+            throw HttpClientErrorException.create(statusCode, response.getReasonPhrase(), null,
+                    body != null ? body.error() : new byte[0], StandardCharsets.UTF_8);
+        }
+        if (statusCode.is5xxServerError()) {
+            throw HttpServerErrorException.create(statusCode, response.getReasonPhrase(), null,
+                    body != null ? body.error() : new byte[0], StandardCharsets.UTF_8);
+        }
+        if (body != null) {
+            return responseMapper.map(statusCode, body.json());
+        }
+        ResponseTokens empty = fineractJsonCodec.newResponseTokens();
+        empty.end();
+        return responseMapper.map(statusCode, empty);
+    }
+
+    // Tokens of a 2xx body, raw bytes of an error body
+    private record ResponseBody(ResponseTokens json, byte[] error) {
+    }
+
+    // Picks the body consumer once the status line is known
+    private static class StreamingResponseConsumer extends BasicResponseConsumer<ResponseBody> {
+
+        // Status line, known before the body consumer starts
+        private final AtomicReference<HttpResponse> head;
 
-        ObjectWriter ow = new ObjectMapper().writer().withDefaultPrettyPrinter();
-        String json = ow.writeValueAsString(requestBody);
-        
-        HttpEntity<String> entity = new HttpEntity<>(json, headers);
-        LOGGER.debug("Sending request to {} with body: {}", url, json);
+        StreamingResponseConsumer(FineractJsonCodec codec) {
+            this(new AtomicReference<>(), codec);
+        }
+
+        private StreamingResponseConsumer(AtomicReference<HttpResponse> head, FineractJsonCodec codec) {
+            super(() -> new ResponseBodyConsumer(head.get().getCode() >= 400 ? null : codec.newResponseTokens()));
+            this.head = head;
+        }
 
-        return restTemplate.exchange(URI.create(url),HttpMethod.POST, entity, JsonNode.class);
+        @Override
+        public void consumeResponse(HttpResponse response, EntityDetails entityDetails, HttpContext context,
+                                    FutureCallback<Message<HttpResponse, ResponseBody>> resultCallback) throws HttpException, IOException {
+            head.set(response);
+            super.consumeResponse(response, entityDetails, context, resultCallback);
+        }
+    }
+
+    // Takes each chunk of the body on the I/O reactor as it arrives, a 2xx body goes straight into the
+    // codec tokens and an error body is kept for the HttpStatusCodeException
+    private static class ResponseBodyConsumer extends AbstractBinAsyncEntityConsumer<ResponseBody> {
+
+        private final ResponseTokens json;
+        private final ByteArrayOutputStream error = new ByteArrayOutputStream();
+
+        ResponseBodyConsumer(ResponseTokens json) {
+            this.json = json;
+        }
+
+        @Override
+        protected void streamStart(ContentType contentType) {
+        }
+
+        // Every chunk is consumed as soon as it arrives, the reactor never has to hold data back
+        @Override
+        protected int capacityIncrement() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        protected void data(ByteBuffer src, boolean endOfStream) {
+            if (json != null) {
+                json.feed(src);
+                return;
+            }
+            byte[] chunk = new byte[src.remaining()];
+            src.get(chunk);
+            error.writeBytes(chunk);
+        }
+
+        @Override
+        protected ResponseBody generateContent() {
+            if (json != null) {
+                json.end();
+            }
+            return new ResponseBody(json, error.toByteArray());
+        }
+
+        @Override
+        public void releaseResources() {
+        }
     }
 
     private String getBasicAuthenticationHeader(String username, String password) {
         String credentials = username + ":" + password;
         return "Basic " + java.util.Base64.getEncoder().encodeToString(credentials.getBytes());
     }
-}
\ No newline at end of file
+
+    public AccountLookupCache getAccountLookupCache() {
+        return accountLookupCache;
+    }
+}
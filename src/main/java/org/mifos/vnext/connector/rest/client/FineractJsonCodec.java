@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Mifos Initiative under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.vnext.connector.rest.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.regex.Pattern;
+import org.mifos.vnext.connector.dto.AccountDepositServiceResponse;
+import org.mifos.vnext.connector.dto.AccountLookupServiceResponse;
+import org.mifos.vnext.connector.dto.AccountWithdrawalServiceResponse;
+import org.springframework.stereotype.Component;
+
+/*
+* JSON encoding of the Fineract connector calls. Requests are written compactly
+* straight to the body stream. Responses are tokenized by a non-blocking parser as
+* their bytes arrive, then read for the fields the connector uses only, without
+* building a JsonNode tree.
+*/
+@Component
+public class FineractJsonCodec {
+
+    private static final Pattern NAME_SEPARATOR = Pattern.compile("[,\\.\\s]");
+
+    private final JsonFactory jsonFactory;
+    private final ObjectWriter requestWriter;
+
+    private record CommandResult(int officeId, int clientId, int savingsId, int resourceId) {
+    }
+
+    public FineractJsonCodec() {
+        JsonMapper mapper = JsonMapper.builder()
+                .disable(SerializationFeature.INDENT_OUTPUT)
+                .build();
+        this.jsonFactory = mapper.getFactory();
+        this.requestWriter = mapper.writer();
+    }
+
+    public void writeRequest(Object request, OutputStream out) throws IOException {
+        requestWriter.writeValue(out, request);
+    }
+
+    public ResponseTokens newResponseTokens() {
+        try {
+            return new ResponseTokens(jsonFactory.createNonBlockingByteBufferParser());
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not create a non-blocking JSON parser", e);
+        }
+    }
+
+    // /quickals answers with an array of matches, only the first one is used.
+    // No match gives an empty response, see AccountLookupCache.isFound.
+    public AccountLookupServiceResponse readLookupResponse(ResponseTokens body) throws IOException {
+        String parentName = null;
+        Integer entityId = null;
+        String entityAccountNo = null;
+        try (JsonParser parser = body.parser()) {
+            expect(parser, JsonToken.START_ARRAY);
+            JsonToken first = parser.nextToken();
+            if (first == JsonToken.END_ARRAY) {
+                return new AccountLookupServiceResponse();
+            }
+            if (first != JsonToken.START_OBJECT) {
+                throw JsonMappingException.from(parser, "Expected " + JsonToken.START_OBJECT + " but found " + first);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "parentName" -> parentName = parser.getValueAsString();
+                    case "entityId" -> entityId = parser.getValueAsInt();
+                    case "entityAccountNo" -> entityAccountNo = parser.getValueAsString();
+                    default -> parser.skipChildren();
+                }
+            }
+            if (parentName == null || entityId == null || entityAccountNo == null) {
+                throw JsonMappingException.from(parser, "Account lookup response without parentName, entityId or entityAccountNo");
+            }
+        }
+        AccountLookupServiceResponse response = new AccountLookupServiceResponse();
+        // A single word name has no last name
+        String[] names = NAME_SEPARATOR.split(parentName.trim());
+        response.setFirstName(names[0]);
+        response.setLastName(names.length > 1 ? names[1] : "");
+        response.setEntityId(entityId);
+        response.setEntityAccountNo(entityAccountNo);
+        return response;
+    }
+
+    public AccountDepositServiceResponse readDepositResponse(ResponseTokens body) throws IOException {
+        CommandResult result = readCommandResult(body);
+        AccountDepositServiceResponse response = new AccountDepositServiceResponse();
+        response.setOfficeId(result.officeId());
+        response.setClientId(result.clientId());
+        response.setSavingsId(result.savingsId());
+        response.setResourceId(result.resourceId());
+        response.setTransactionStatus("success");
+        return response;
+    }
+
+    public AccountWithdrawalServiceResponse readWithdrawalResponse(ResponseTokens body) throws IOException {
+        CommandResult result = readCommandResult(body);
+        AccountWithdrawalServiceResponse response = new AccountWithdrawalServiceResponse();
+        response.setOfficeId(result.officeId());
+        response.setClientId(result.clientId());
+        response.setSavingsId(result.savingsId());
+        response.setResourceId(result.resourceId());
+        return response;
+    }
+
+    // Deposits and withdrawals answer with the same command result object
+    private CommandResult readCommandResult(ResponseTokens body) throws IOException {
+        Integer officeId = null;
+        Integer clientId = null;
+        Integer savingsId = null;
+        Integer resourceId = null;
+        try (JsonParser parser = body.parser()) {
+            expect(parser, JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "officeId" -> officeId = parser.getValueAsInt();
+                    case "clientId" -> clientId = parser.getValueAsInt();
+                    case "savingsId" -> savingsId = parser.getValueAsInt();
+                    case "resourceId" -> resourceId = parser.getValueAsInt();
+                    default -> parser.skipChildren();
+                }
+            }
+            if (officeId == null || clientId == null || savingsId == null || resourceId == null) {
+                throw JsonMappingException.from(parser, "Command result without officeId, clientId, savingsId or resourceId");
+            }
+        }
+        return new CommandResult(officeId, clientId, savingsId, resourceId);
+    }
+
+    private static void expect(JsonParser parser, JsonToken expected) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token != expected) {
+            throw JsonMappingException.from(parser, "Expected " + expected + " but found " + token);
+        }
+    }
+
+    /*
+    * Tokens of one response body, fed chunk by chunk on the I/O reactor thread as the
+    * bytes arrive so no thread waits for the rest of the body. A body that is not valid
+    * JSON is remembered and thrown by the read method, like a blocking parser would.
+    */
+    public static final class ResponseTokens {
+
+        private final JsonParser parser;
+        private final TokenBuffer tokens;
+        private IOException failure;
+
+        private ResponseTokens(JsonParser parser) {
+            this.parser = parser;
+            this.tokens = new TokenBuffer(parser);
+        }
+
+        // Takes every remaining byte of data, the parser keeps no reference to the buffer afterwards
+        public void feed(ByteBuffer data) {
+            if (failure == null) {
+                try {
+                    ((ByteBufferFeeder) parser.getNonBlockingInputFeeder()).feedInput(data);
+                    copyAvailableTokens();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            data.position(data.limit());
+        }
+
+        public void end() {
+            if (failure == null) {
+                try {
+                    parser.getNonBlockingInputFeeder().endOfInput();
+                    copyAvailableTokens();
+                    parser.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+
+        private void copyAvailableTokens() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                tokens.copyCurrentEvent(parser);
+            }
+        }
+
+        private JsonParser parser() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            return tokens.asParser();
+        }
+    }
+}
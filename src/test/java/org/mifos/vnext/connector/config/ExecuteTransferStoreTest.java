@@ -0,0 +1,134 @@
+package org.mifos.vnext.connector.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.grpc.Status;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.mifos.grpc.proto.vnext.ErrorResponse;
+import org.mifos.grpc.proto.vnext.TransferRequest;
+import org.mifos.grpc.proto.vnext.TransferResponse;
+import org.mifos.grpc.proto.vnext.TransferSuccessResponse;
+
+class ExecuteTransferStoreTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final ExecuteTransferStore store = new ExecuteTransferStore(60000, 5000, 100, now::get);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void replaysStoredResult() {
+        TransferRequest request = request("home-1", "first note");
+
+        store.execute(request, () -> succeed("transfer-1")).join();
+        TransferResponse retried = store.execute(request, () -> succeed("transfer-2")).join();
+
+        assertThat(retried.getSuccess().getTransferId()).isEqualTo("transfer-1");
+        assertThat(calls).hasValue(1);
+        assertThat(store.getReplayedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsUnknownOutcome() {
+        TransferRequest request = request("home-1", "first note");
+
+        store.execute(request, () -> fail(Status.DEADLINE_EXCEEDED));
+        CompletableFuture<TransferResponse> retried = store.execute(request, () -> succeed("transfer-2"));
+
+        assertThatThrownBy(retried::get).isInstanceOf(ExecutionException.class)
+                .hasMessageContaining("DEADLINE_EXCEEDED");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void forgetsUnknownOutcomeAfterItsOwnTtl() {
+        TransferRequest request = request("home-1", "first note");
+
+        store.execute(request, () -> fail(Status.UNAVAILABLE));
+        advance(4000);
+        assertThatThrownBy(store.execute(request, () -> succeed("transfer-2"))::get)
+                .hasMessageContaining("UNAVAILABLE");
+        advance(2000);
+        TransferResponse retried = store.execute(request, () -> succeed("transfer-2")).join();
+
+        assertThat(retried.getSuccess().getTransferId()).isEqualTo("transfer-2");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void keepsStoredResultForTheFullTtl() {
+        TransferRequest request = request("home-1", "first note");
+
+        store.execute(request, () -> succeed("transfer-1")).join();
+        advance(59000);
+        assertThat(store.execute(request, () -> succeed("transfer-2")).join().getSuccess().getTransferId())
+                .isEqualTo("transfer-1");
+        advance(2000);
+        assertThat(store.execute(request, () -> succeed("transfer-3")).join().getSuccess().getTransferId())
+                .isEqualTo("transfer-3");
+    }
+
+    @Test
+    void forgetsRejectedCall() {
+        TransferRequest request = request("home-1", "first note");
+
+        store.execute(request, () -> fail(Status.INVALID_ARGUMENT));
+        TransferResponse retried = store.execute(request, () -> succeed("transfer-2")).join();
+
+        assertThat(retried.getSuccess().getTransferId()).isEqualTo("transfer-2");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void forgetsTransferRejectedBySwitch() {
+        TransferRequest request = request("home-1", "first note");
+
+        store.execute(request, () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(TransferResponse.newBuilder()
+                    .setHomeTransactionId("home-1")
+                    .setError(ErrorResponse.newBuilder().setCode("3100").setMessage("rejected"))
+                    .build());
+        }).join();
+        TransferResponse retried = store.execute(request, () -> succeed("transfer-2")).join();
+
+        assertThat(retried.getSuccess().getTransferId()).isEqualTo("transfer-2");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void rejectsDifferentTransferWithSameHomeTransactionId() {
+        store.execute(request("home-1", "first note"), () -> succeed("transfer-1")).join();
+        CompletableFuture<TransferResponse> conflicting = store.execute(request("home-1", "other note"), () -> succeed("transfer-2"));
+
+        assertThatThrownBy(conflicting::get).isInstanceOf(ExecutionException.class)
+                .hasMessageContaining("ALREADY_EXISTS");
+        assertThat(calls).hasValue(1);
+        assertThat(store.getConflictCount()).isEqualTo(1);
+    }
+
+    private void advance(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private static TransferRequest request(String homeTransactionId, String note) {
+        return TransferRequest.newBuilder().setHomeTransactionId(homeTransactionId).setNote(note).build();
+    }
+
+    private CompletableFuture<TransferResponse> succeed(String transferId) {
+        calls.incrementAndGet();
+        return CompletableFuture.completedFuture(TransferResponse.newBuilder()
+                .setSuccess(TransferSuccessResponse.newBuilder().setTransferId(transferId))
+                .build());
+    }
+
+    private CompletableFuture<TransferResponse> fail(Status status) {
+        calls.incrementAndGet();
+        return CompletableFuture.failedFuture(status.asRuntimeException());
+    }
+}
@@ -0,0 +1,188 @@
+package org.mifos.vnext.connector.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.mifos.grpc.proto.vnext.Empty;
+import org.mifos.grpc.proto.vnext.ErrorResponse;
+import org.mifos.grpc.proto.vnext.LookupParticipantResponse;
+import org.mifos.grpc.proto.vnext.LookupPartyResponse;
+import org.mifos.grpc.proto.vnext.LookupPartySuccessResponse;
+
+class SwitchLookupCacheTest {
+
+    private static final SwitchLookupCache.LookupKey KEY = new SwitchLookupCache.LookupKey("MSISDN", "party-1", "USD", "fsp-1");
+
+    private final AtomicLong now = new AtomicLong();
+    private final SwitchLookupCache<LookupParticipantResponse> participants =
+            SwitchLookupCache.forParticipants(true, 60000, 5000, 100, now::get);
+    private final SwitchLookupCache<LookupPartyResponse> parties =
+            SwitchLookupCache.forParties(true, 60000, 5000, 100, now::get);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void concurrentMissesShareOneCall() {
+        CompletableFuture<LookupParticipantResponse> running = new CompletableFuture<>();
+
+        CompletableFuture<LookupParticipantResponse> first = participants.load(KEY, false, () -> {
+            calls.incrementAndGet();
+            return running;
+        });
+        CompletableFuture<LookupParticipantResponse> second = participants.load(KEY, false, () -> call(participant("fsp-2")));
+
+        assertThat(first).isNotDone();
+        assertThat(second).isNotDone();
+
+        running.complete(participant("fsp-2"));
+
+        assertThat(first.join().getFspId()).isEqualTo("fsp-2");
+        assertThat(second.join().getFspId()).isEqualTo("fsp-2");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void cachesAnswerBeforeLeavingFlight() {
+        AtomicReference<SwitchLookupCache<LookupPartyResponse>> ordered = new AtomicReference<>();
+        AtomicReference<CompletableFuture<LookupPartyResponse>> duringCaching = new AtomicReference<>();
+        ordered.set(new SwitchLookupCache<>("party", true, 60000, 5000, 100, LookupPartyResponse::hasResponse, response -> {
+            // Not cached yet, so this caller has to find the call still in flight
+            duringCaching.set(ordered.get().load(KEY, false, () -> call(party("Jane"))));
+            return true;
+        }, now::get));
+        CompletableFuture<LookupPartyResponse> running = new CompletableFuture<>();
+
+        CompletableFuture<LookupPartyResponse> first = ordered.get().load(KEY, false, () -> running);
+        running.complete(party("John"));
+
+        assertThat(first.join().getResponse().getFirstName()).isEqualTo("John");
+        assertThat(duringCaching.get().join().getResponse().getFirstName()).isEqualTo("John");
+        assertThat(calls).hasValue(0);
+    }
+
+    @Test
+    void keepsFoundParticipantForTheTtl() {
+        participants.load(KEY, false, () -> call(participant("fsp-2"))).join();
+        advance(59000);
+        assertThat(participants.load(KEY, false, () -> call(participant("fsp-3"))).join().getFspId()).isEqualTo("fsp-2");
+        advance(2000);
+        assertThat(participants.load(KEY, false, () -> call(participant("fsp-4"))).join().getFspId()).isEqualTo("fsp-4");
+
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void keepsNotFoundParticipantForTheNegativeTtl() {
+        participants.load(KEY, false, () -> call(LookupParticipantResponse.newBuilder().setNotFound(Empty.getDefaultInstance()).build())).join();
+        advance(4000);
+        assertThat(participants.load(KEY, false, () -> call(participant("fsp-2"))).join().hasNotFound()).isTrue();
+        advance(2000);
+        assertThat(participants.load(KEY, false, () -> call(participant("fsp-2"))).join().getFspId()).isEqualTo("fsp-2");
+
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void doesNotCacheParticipantError() {
+        participants.load(KEY, false, () -> call(LookupParticipantResponse.newBuilder().setError(error(StreamErrorCode.SERVICE_UNAVAILABLE)).build())).join();
+
+        assertThat(participants.load(KEY, false, () -> call(participant("fsp-2"))).join().getFspId()).isEqualTo("fsp-2");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void keepsPartyNotFoundErrorForTheNegativeTtl() {
+        parties.load(KEY, false, () -> call(partyError(StreamErrorCode.PARTY_NOT_FOUND))).join();
+        advance(4000);
+        assertThat(parties.load(KEY, false, () -> call(party("John"))).join().getError().getCode())
+                .isEqualTo(StreamErrorCode.PARTY_NOT_FOUND.getCode());
+        advance(2000);
+        assertThat(parties.load(KEY, false, () -> call(party("John"))).join().getResponse().getFirstName()).isEqualTo("John");
+
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void doesNotCacheOtherPartyErrors() {
+        parties.load(KEY, false, () -> call(partyError(StreamErrorCode.SERVER_TIMED_OUT))).join();
+
+        assertThat(parties.load(KEY, false, () -> call(party("John"))).join().getResponse().getFirstName()).isEqualTo("John");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void forgetsFailedCall() {
+        CompletableFuture<LookupPartyResponse> failed = parties.load(KEY, false,
+                () -> CompletableFuture.failedFuture(new IllegalStateException("Stream closed")));
+
+        assertThatThrownBy(failed::get).isInstanceOf(ExecutionException.class)
+                .hasMessageContaining("Stream closed");
+        assertThat(parties.load(KEY, false, () -> call(party("John"))).join().getResponse().getFirstName()).isEqualTo("John");
+        assertThat(parties.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    void bypassReplacesCachedAnswer() {
+        parties.load(KEY, false, () -> call(party("John"))).join();
+
+        assertThat(parties.load(KEY, true, () -> call(party("Jane"))).join().getResponse().getFirstName()).isEqualTo("Jane");
+        assertThat(parties.load(KEY, false, () -> call(party("Joe"))).join().getResponse().getFirstName()).isEqualTo("Jane");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void bypassStillJoinsCallInFlight() {
+        CompletableFuture<LookupPartyResponse> running = new CompletableFuture<>();
+
+        parties.load(KEY, true, () -> running);
+        CompletableFuture<LookupPartyResponse> joined = parties.load(KEY, true, () -> call(party("Jane")));
+        running.complete(party("John"));
+
+        assertThat(joined.join().getResponse().getFirstName()).isEqualTo("John");
+        assertThat(calls).hasValue(0);
+    }
+
+    @Test
+    void disabledCacheAlwaysCallsTheSwitch() {
+        SwitchLookupCache<LookupPartyResponse> disabled = SwitchLookupCache.forParties(false, 60000, 5000, 100, now::get);
+
+        disabled.load(KEY, false, () -> call(party("John"))).join();
+        disabled.load(KEY, false, () -> call(party("John"))).join();
+
+        assertThat(calls).hasValue(2);
+        assertThat(disabled.getSize()).isZero();
+    }
+
+    private <T> CompletableFuture<T> call(T response) {
+        calls.incrementAndGet();
+        return CompletableFuture.completedFuture(response);
+    }
+
+    private static LookupParticipantResponse participant(String fspId) {
+        return LookupParticipantResponse.newBuilder().setFspId(fspId).build();
+    }
+
+    private static LookupPartyResponse party(String firstName) {
+        return LookupPartyResponse.newBuilder()
+                .setResponse(LookupPartySuccessResponse.newBuilder().setPartyId("party-1").setFirstName(firstName))
+                .build();
+    }
+
+    private static LookupPartyResponse partyError(StreamErrorCode code) {
+        return LookupPartyResponse.newBuilder().setError(error(code)).build();
+    }
+
+    private static ErrorResponse error(StreamErrorCode code) {
+        return ErrorResponse.newBuilder().setCode(code.getCode()).setMessage(code.getDescription()).build();
+    }
+
+    private void advance(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
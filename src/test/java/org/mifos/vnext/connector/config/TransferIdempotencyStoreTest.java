@@ -0,0 +1,157 @@
+package org.mifos.vnext.connector.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.mifos.grpc.proto.vnext.ServerAcceptTransferRequest;
+import org.mifos.grpc.proto.vnext.ServerAcceptTransferResponse;
+import org.mifos.vnext.connector.config.StreamRequestException.TransferStage;
+
+class TransferIdempotencyStoreTest {
+
+    private final TransferIdempotencyStore store = new TransferIdempotencyStore(60000, 100);
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    void replaysStoredResult() {
+        ServerAcceptTransferRequest request = request("transfer-1");
+
+        ServerAcceptTransferResponse first = store.execute(request, () -> succeed("first")).join();
+        ServerAcceptTransferResponse second = store.execute(request, () -> succeed("second")).join();
+
+        assertThat(second).isEqualTo(first);
+        assertThat(first.getTransferId()).isEqualTo("first");
+        assertThat(executions).hasValue(1);
+        assertThat(store.getReplayedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void duplicateJoinsTransferInProgress() {
+        ServerAcceptTransferRequest request = request("transfer-1");
+        CompletableFuture<ServerAcceptTransferResponse> running = new CompletableFuture<>();
+
+        CompletableFuture<ServerAcceptTransferResponse> first = store.execute(request, () -> {
+            executions.incrementAndGet();
+            return running;
+        });
+        CompletableFuture<ServerAcceptTransferResponse> second = store.execute(request, () -> succeed("second"));
+
+        assertThat(first).isNotDone();
+        assertThat(second).isNotDone();
+
+        running.complete(response("first"));
+
+        assertThat(first.join().getTransferId()).isEqualTo("first");
+        assertThat(second.join().getTransferId()).isEqualTo("first");
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    void cancellingReplayDoesNotCancelTransfer() {
+        ServerAcceptTransferRequest request = request("transfer-1");
+        CompletableFuture<ServerAcceptTransferResponse> running = new CompletableFuture<>();
+
+        CompletableFuture<ServerAcceptTransferResponse> first = store.execute(request, () -> running);
+        store.execute(request, () -> succeed("second")).cancel(true);
+        running.complete(response("first"));
+
+        assertThat(first.join().getTransferId()).isEqualTo("first");
+    }
+
+    @Test
+    void evictsFailureBeforeDeposit() {
+        ServerAcceptTransferRequest request = request("transfer-1");
+
+        CompletableFuture<ServerAcceptTransferResponse> first = store.execute(request,
+                () -> fail(new StreamRequestException(StreamErrorCode.SERVICE_UNAVAILABLE, "lookup failed", TransferStage.LOOKUP, null)));
+        assertThatThrownBy(first::get).isInstanceOf(ExecutionException.class);
+
+        ServerAcceptTransferResponse retried = store.execute(request, () -> succeed("retried")).join();
+
+        assertThat(retried.getTransferId()).isEqualTo("retried");
+        assertThat(executions).hasValue(1);
+        assertThat(store.getReplayedCount()).isZero();
+    }
+
+    @Test
+    void evictsFailureThrownBySupplier() {
+        ServerAcceptTransferRequest request = request("transfer-1");
+
+        CompletableFuture<ServerAcceptTransferResponse> first = store.execute(request, () -> {
+            throw new IllegalStateException("not started");
+        });
+        assertThatThrownBy(first::get).isInstanceOf(ExecutionException.class);
+
+        assertThat(store.execute(request, () -> succeed("retried")).join().getTransferId()).isEqualTo("retried");
+    }
+
+    @Test
+    void keepsFailureAfterDeposit() {
+        ServerAcceptTransferRequest request = request("transfer-1");
+        StreamRequestException withdrawalFailure = new StreamRequestException(StreamErrorCode.SERVER_TIMED_OUT,
+                "withdrawal timed out", TransferStage.WITHDRAWAL, null);
+
+        store.execute(request, () -> fail(withdrawalFailure));
+        CompletableFuture<ServerAcceptTransferResponse> replayed = store.execute(request, () -> succeed("retried"));
+
+        assertThatThrownBy(replayed::get).hasCause(withdrawalFailure);
+        assertThat(executions).hasValue(0);
+        assertThat(store.getReplayedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsUntaggedFailure() {
+        ServerAcceptTransferRequest request = request("transfer-1");
+
+        store.execute(request, () -> fail(new IllegalStateException("unknown outcome")));
+        CompletableFuture<ServerAcceptTransferResponse> replayed = store.execute(request, () -> succeed("retried"));
+
+        assertThatThrownBy(replayed::get).isInstanceOf(ExecutionException.class);
+        assertThat(executions).hasValue(0);
+    }
+
+    @Test
+    void bypassesRequestWithoutKey() {
+        ServerAcceptTransferRequest request = ServerAcceptTransferRequest.getDefaultInstance();
+
+        store.execute(request, () -> succeed("first")).join();
+        store.execute(request, () -> succeed("second")).join();
+
+        assertThat(executions).hasValue(2);
+        assertThat(store.getSize()).isZero();
+    }
+
+    @Test
+    void fallsBackToHomeTransactionId() {
+        ServerAcceptTransferRequest request = ServerAcceptTransferRequest.newBuilder()
+                .setHomeTransactionId("home-1")
+                .build();
+
+        store.execute(request, () -> succeed("first")).join();
+        ServerAcceptTransferResponse second = store.execute(request, () -> succeed("second")).join();
+
+        assertThat(second.getTransferId()).isEqualTo("first");
+        assertThat(executions).hasValue(1);
+    }
+
+    private static ServerAcceptTransferRequest request(String transferId) {
+        return ServerAcceptTransferRequest.newBuilder().setTransferId(transferId).build();
+    }
+
+    private static ServerAcceptTransferResponse response(String transferId) {
+        return ServerAcceptTransferResponse.newBuilder().setTransferId(transferId).build();
+    }
+
+    private CompletableFuture<ServerAcceptTransferResponse> succeed(String transferId) {
+        executions.incrementAndGet();
+        return CompletableFuture.completedFuture(response(transferId));
+    }
+
+    private static CompletableFuture<ServerAcceptTransferResponse> fail(Throwable error) {
+        return CompletableFuture.failedFuture(error);
+    }
+}
@@ -0,0 +1,40 @@
+package org.mifos.vnext.connector.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+class VnextStreamTest {
+
+    private static final long INITIAL_BACKOFF = 1000;
+    private static final long MAX_BACKOFF = 30000;
+
+    @RepeatedTest(20)
+    void backoffDoublesWithEqualJitter() {
+        for (int attempt = 1; attempt <= 5; attempt++) {
+            long delay = INITIAL_BACKOFF << (attempt - 1);
+            assertThat(VnextStream.nextBackoff(attempt, INITIAL_BACKOFF, MAX_BACKOFF)).isBetween(delay / 2, delay);
+        }
+    }
+
+    @RepeatedTest(20)
+    void backoffIsCappedAtMaxBackoff() {
+        assertThat(VnextStream.nextBackoff(6, INITIAL_BACKOFF, MAX_BACKOFF)).isBetween(MAX_BACKOFF / 2, MAX_BACKOFF);
+        assertThat(VnextStream.nextBackoff(100, INITIAL_BACKOFF, MAX_BACKOFF)).isBetween(MAX_BACKOFF / 2, MAX_BACKOFF);
+    }
+
+    @Test
+    void backoffStaysBelowMaxBackoffForHugeDelays() {
+        long maxBackoff = Long.MAX_VALUE / 2;
+        for (int attempt = 1; attempt <= 200; attempt++) {
+            assertThat(VnextStream.nextBackoff(attempt, Long.MAX_VALUE / 4, maxBackoff)).isBetween(0L, maxBackoff);
+        }
+    }
+
+    @Test
+    void backoffWithoutDelays() {
+        assertThat(VnextStream.nextBackoff(1, 0, 0)).isZero();
+        assertThat(VnextStream.nextBackoff(3, 1, 1)).isBetween(0L, 1L);
+    }
+}
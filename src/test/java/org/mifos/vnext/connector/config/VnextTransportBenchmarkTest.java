@@ -0,0 +1,144 @@
+package org.mifos.vnext.connector.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.netty.channel.epoll.Epoll;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mifos.grpc.proto.vnext.InteropGrpcApiGrpc;
+import org.mifos.grpc.proto.vnext.LookupParticipantRequest;
+import org.mifos.grpc.proto.vnext.LookupParticipantResponse;
+
+/*
+* In-process comparison of the switch channel transports: unary calls against a
+* local plaintext server through channels built by VnextChannelFactory.
+* Run with: mvn test -Dtest=VnextTransportBenchmarkTest -Dbenchmark=true
+*/
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class VnextTransportBenchmarkTest {
+
+    private static final int WARMUP_CALLS = 20_000;
+    private static final int MEASURED_CALLS = 100_000;
+    private static final int CALLS_IN_FLIGHT = 64;
+
+    private static Server server;
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = NettyServerBuilder.forAddress(new InetSocketAddress("localhost", 0))
+                .addService(new InteropGrpcApiGrpc.InteropGrpcApiImplBase() {
+                    @Override
+                    public void lookupParticipant(LookupParticipantRequest request, StreamObserver<LookupParticipantResponse> responseObserver) {
+                        responseObserver.onNext(LookupParticipantResponse.newBuilder().setFspId("mifos-bank-1").build());
+                        responseObserver.onCompleted();
+                    }
+                })
+                .build()
+                .start();
+    }
+
+    @AfterAll
+    static void stopServer() throws InterruptedException {
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void nio() throws Exception {
+        run(VnextChannelFactory.Transport.NIO, true);
+    }
+
+    @Test
+    void nioUnpooled() throws Exception {
+        run(VnextChannelFactory.Transport.NIO, false);
+    }
+
+    @Test
+    void epoll() throws Exception {
+        if (!Epoll.isAvailable()) {
+            System.out.println("epoll not available: " + Epoll.unavailabilityCause().getMessage());
+            return;
+        }
+        run(VnextChannelFactory.Transport.EPOLL, true);
+    }
+
+    private static void run(VnextChannelFactory.Transport transport, boolean pooledAllocator) throws Exception {
+        VnextChannelFactory channelFactory = new VnextChannelFactory(new TransportSettings("localhost", server.getPort(), 60000, 20000,
+                false, transport, 0, pooledAllocator, 0));
+        ManagedChannel channel = channelFactory.channelBuilder().usePlaintext().build();
+        try {
+            InteropGrpcApiGrpc.InteropGrpcApiStub stub = InteropGrpcApiGrpc.newStub(channel);
+            assertThat(channelFactory.isEpoll()).isEqualTo(transport == VnextChannelFactory.Transport.EPOLL);
+            System.out.printf("%s%s, %d calls in flight%n", channelFactory.isEpoll() ? "epoll" : "nio",
+                    pooledAllocator ? "" : " unpooled", CALLS_IN_FLIGHT);
+
+            calls(stub, WARMUP_CALLS);
+            long[] latencies = calls(stub, MEASURED_CALLS);
+
+            Arrays.sort(latencies);
+            System.out.printf("  p50 %d us, p99 %d us%n",
+                    TimeUnit.NANOSECONDS.toMicros(latencies[latencies.length / 2]),
+                    TimeUnit.NANOSECONDS.toMicros(latencies[latencies.length * 99 / 100]));
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            channelFactory.shutdown();
+        }
+    }
+
+    // Latency of every call, at most CALLS_IN_FLIGHT outstanding
+    private static long[] calls(InteropGrpcApiGrpc.InteropGrpcApiStub stub, int count) throws InterruptedException {
+        long[] latencies = new long[count];
+        Semaphore window = new Semaphore(CALLS_IN_FLIGHT);
+        CountDownLatch done = new CountDownLatch(count);
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            window.acquire();
+            int call = i;
+            long sent = System.nanoTime();
+            stub.lookupParticipant(LookupParticipantRequest.newBuilder()
+                            .setPartyIdType("MSISDN")
+                            .setPartyId(String.valueOf(call))
+                            .build(),
+                    new StreamObserver<LookupParticipantResponse>() {
+                        @Override
+                        public void onNext(LookupParticipantResponse response) {
+                            latencies[call] = System.nanoTime() - sent;
+                        }
+
+                        @Override
+                        public void onError(Throwable error) {
+                            failures.incrementAndGet();
+                            finish();
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            finish();
+                        }
+
+                        private void finish() {
+                            window.release();
+                            done.countDown();
+                        }
+                    });
+        }
+        assertThat(done.await(2, TimeUnit.MINUTES)).isTrue();
+        long elapsed = System.nanoTime() - start;
+        assertThat(failures).hasValue(0);
+        System.out.printf("  %d calls in %d ms, %d calls/s%n", count, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                count * TimeUnit.SECONDS.toNanos(1) / elapsed);
+        return latencies;
+    }
+}
@@ -0,0 +1,111 @@
+package org.mifos.vnext.connector.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class WindowedBatchTest {
+
+    @Test
+    void keepsRequestOrderWhenCallsCompleteOutOfOrder() {
+        List<Integer> requests = List.of(0, 1, 2, 3, 4);
+        Map<Integer, CompletableFuture<String>> calls = new ConcurrentHashMap<>();
+
+        CompletableFuture<List<String>> batch = WindowedBatch.run(requests, 5,
+                request -> calls.computeIfAbsent(request, key -> new CompletableFuture<>()),
+                (request, error) -> "failed " + request);
+
+        for (int request = 4; request >= 0; request--) {
+            calls.get(request).complete("result " + request);
+        }
+
+        assertThat(batch.join()).containsExactly("result 0", "result 1", "result 2", "result 3", "result 4");
+    }
+
+    @Test
+    void keepsAtMostWindowCallsInFlight() {
+        List<Integer> requests = IntStream.range(0, 10).boxed().toList();
+        List<CompletableFuture<Integer>> pending = new ArrayList<>();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        CompletableFuture<List<Integer>> batch = WindowedBatch.run(requests, 3, request -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            CompletableFuture<Integer> call = new CompletableFuture<>();
+            synchronized (pending) {
+                pending.add(call);
+            }
+            return call.whenComplete((result, error) -> inFlight.decrementAndGet());
+        }, (request, error) -> -1);
+
+        assertThat(pending).hasSize(3);
+        for (int completed = 0; completed < requests.size(); completed++) {
+            CompletableFuture<Integer> call;
+            synchronized (pending) {
+                call = pending.get(completed);
+            }
+            call.complete(completed);
+        }
+
+        assertThat(batch.join()).hasSize(10);
+        assertThat(maxInFlight).hasValue(3);
+    }
+
+    @Test
+    void mapsFailedCallsWithOnFailure() {
+        List<Integer> requests = List.of(0, 1, 2);
+
+        List<String> results = WindowedBatch.run(requests, 2, request -> {
+            if (request == 1) {
+                return CompletableFuture.<String>failedFuture(new IllegalStateException("call failed"));
+            }
+            if (request == 2) {
+                throw new IllegalArgumentException("not sent");
+            }
+            return CompletableFuture.completedFuture("result " + request);
+        }, (request, error) -> "failed " + request + ": " + error.getMessage()).join();
+
+        assertThat(results).containsExactly("result 0", "failed 1: call failed", "failed 2: not sent");
+    }
+
+    @Test
+    void reportsEveryResultWithItsIndex() {
+        List<Integer> requests = List.of(10, 20, 30);
+        Map<Integer, String> reported = new ConcurrentHashMap<>();
+
+        WindowedBatch.run(requests, 2,
+                request -> CompletableFuture.completedFuture("result " + request),
+                (request, error) -> "failed",
+                reported::put).join();
+
+        assertThat(reported).containsExactlyInAnyOrderEntriesOf(Map.of(0, "result 10", 1, "result 20", 2, "result 30"));
+    }
+
+    @Test
+    void failsBatchWhenOnResultFails() {
+        CompletableFuture<List<String>> batch = WindowedBatch.run(List.of(1), 1,
+                request -> CompletableFuture.completedFuture("result"),
+                (request, error) -> "failed",
+                (index, result) -> {
+                    throw new IllegalStateException("consumer failed");
+                });
+
+        assertThatThrownBy(batch::get).isInstanceOf(ExecutionException.class).hasMessageContaining("consumer failed");
+    }
+
+    @Test
+    void emptyBatchCompletesRightAway() {
+        assertThat(WindowedBatch.run(List.<Integer>of(), 4,
+                request -> CompletableFuture.completedFuture("result"),
+                (request, error) -> "failed").join()).isEmpty();
+    }
+}
@@ -0,0 +1,90 @@
+package org.mifos.vnext.connector.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.NoSuchElementException;
+import org.junit.jupiter.api.Test;
+import org.mifos.vnext.connector.config.InvalidTransferLineException;
+
+class TransferRequestLinesTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void readsEveryLineAndSkipsBlankOnes() {
+        TransferRequestLines lines = lines("""
+                {"homeTransactionId":"tx-1","amountType":"SEND"}
+
+                {"homeTransactionId":"tx-2","amountType":"SEND"}
+                """);
+
+        assertThat(lines.next().getHomeTransactionId()).isEqualTo("tx-1");
+        assertThat(lines.next().getHomeTransactionId()).isEqualTo("tx-2");
+        assertThat(lines.hasNext()).isFalse();
+        assertThatThrownBy(lines::next).isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void malformedLineFailsAloneWithItsLineNumber() {
+        TransferRequestLines lines = lines("""
+                {"homeTransactionId":"tx-1"}
+                {"homeTransactionId":
+                {"homeTransactionId":"tx-3"}
+                """);
+
+        assertThat(lines.next().getHomeTransactionId()).isEqualTo("tx-1");
+        assertThatThrownBy(lines::next)
+                .isInstanceOfSatisfying(InvalidTransferLineException.class,
+                        e -> assertThat(e.getHomeTransactionId()).isNull())
+                .hasMessageStartingWith("Line 2 ");
+        assertThat(lines.next().getHomeTransactionId()).isEqualTo("tx-3");
+        assertThat(lines.hasNext()).isFalse();
+    }
+
+    @Test
+    void unmappableLineKeepsItsHomeTransactionId() {
+        TransferRequestLines lines = lines("""
+                {"homeTransactionId":"tx-1","amount":"not an object"}
+                [1, 2]
+                {"homeTransactionId":"tx-3"}
+                """);
+
+        assertThatThrownBy(lines::next)
+                .isInstanceOfSatisfying(InvalidTransferLineException.class,
+                        e -> assertThat(e.getHomeTransactionId()).isEqualTo("tx-1"))
+                .hasMessageStartingWith("Line 1 ");
+        assertThatThrownBy(lines::next)
+                .isInstanceOfSatisfying(InvalidTransferLineException.class,
+                        e -> assertThat(e.getHomeTransactionId()).isNull())
+                .hasMessageStartingWith("Line 2 ");
+        assertThat(lines.next().getHomeTransactionId()).isEqualTo("tx-3");
+    }
+
+    @Test
+    void failedReadIsNotALineError() {
+        Reader broken = new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("connection reset");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        TransferRequestLines lines = new TransferRequestLines(new BufferedReader(broken), objectMapper);
+
+        assertThatThrownBy(lines::hasNext).isInstanceOf(UncheckedIOException.class);
+    }
+
+    private TransferRequestLines lines(String body) {
+        return new TransferRequestLines(new BufferedReader(new StringReader(body)), objectMapper);
+    }
+}
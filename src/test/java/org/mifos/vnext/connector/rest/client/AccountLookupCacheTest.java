@@ -0,0 +1,160 @@
+package org.mifos.vnext.connector.rest.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.mifos.vnext.connector.dto.AccountLookupServiceResponse;
+
+class AccountLookupCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AccountLookupCache cache = new AccountLookupCache(true, 60000, 5000, 100, now::get);
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    @Test
+    void concurrentMissesShareOneLookup() {
+        CompletableFuture<AccountLookupServiceResponse> running = new CompletableFuture<>();
+
+        CompletableFuture<AccountLookupServiceResponse> first = cache.load("tenant", "party-1", () -> {
+            lookups.incrementAndGet();
+            return running;
+        });
+        CompletableFuture<AccountLookupServiceResponse> second = cache.load("tenant", "party-1", () -> lookup("other"));
+
+        assertThat(first).isNotDone();
+        assertThat(second).isNotDone();
+
+        running.complete(found("000000001"));
+
+        assertThat(first.join().getEntityAccountNo()).isEqualTo("000000001");
+        assertThat(second.join().getEntityAccountNo()).isEqualTo("000000001");
+        assertThat(lookups).hasValue(1);
+        assertThat(cache.getCoalescedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void cancellingJoinedLookupDoesNotCancelTheCall() {
+        CompletableFuture<AccountLookupServiceResponse> running = new CompletableFuture<>();
+
+        CompletableFuture<AccountLookupServiceResponse> first = cache.load("tenant", "party-1", () -> running);
+        cache.load("tenant", "party-1", () -> lookup("other")).cancel(true);
+        running.complete(found("000000001"));
+
+        assertThat(running).isNotCancelled();
+        assertThat(first.join().getEntityAccountNo()).isEqualTo("000000001");
+    }
+
+    @Test
+    void cachesAnswerBeforeLeavingFlight() {
+        AtomicReference<CompletableFuture<AccountLookupServiceResponse>> duringPut = new AtomicReference<>();
+        AccountLookupCache ordered = new AccountLookupCache(true, 60000, 5000, 100, now::get) {
+            @Override
+            public void put(String tenant, String partyId, AccountLookupServiceResponse response) {
+                // Not cached yet, so this caller has to find the lookup still in flight
+                duringPut.set(load(tenant, partyId, () -> lookup("other")));
+                super.put(tenant, partyId, response);
+            }
+        };
+        CompletableFuture<AccountLookupServiceResponse> running = new CompletableFuture<>();
+
+        ordered.load("tenant", "party-1", () -> running);
+        running.complete(found("000000001"));
+
+        assertThat(duringPut.get().join().getEntityAccountNo()).isEqualTo("000000001");
+        assertThat(lookups).hasValue(0);
+    }
+
+    @Test
+    void keepsFoundAccountForTheTtl() {
+        cache.load("tenant", "party-1", () -> lookup("000000001")).join();
+        advance(59000);
+        assertThat(cache.load("tenant", "party-1", () -> lookup("000000002")).join().getEntityAccountNo())
+                .isEqualTo("000000001");
+        advance(2000);
+        assertThat(cache.load("tenant", "party-1", () -> lookup("000000003")).join().getEntityAccountNo())
+                .isEqualTo("000000003");
+
+        assertThat(lookups).hasValue(2);
+    }
+
+    @Test
+    void keepsNotFoundAccountForTheNegativeTtl() {
+        cache.load("tenant", "party-1", () -> lookup(null)).join();
+        advance(4000);
+        assertThat(AccountLookupCache.isFound(cache.load("tenant", "party-1", () -> lookup("000000001")).join()))
+                .isFalse();
+        advance(2000);
+        assertThat(cache.load("tenant", "party-1", () -> lookup("000000001")).join().getEntityAccountNo())
+                .isEqualTo("000000001");
+
+        assertThat(lookups).hasValue(2);
+    }
+
+    @Test
+    void forgetsFailedLookup() {
+        CompletableFuture<AccountLookupServiceResponse> failed = cache.load("tenant", "party-1",
+                () -> CompletableFuture.failedFuture(new IllegalStateException("Fineract down")));
+
+        assertThatThrownBy(failed::get).isInstanceOf(ExecutionException.class)
+                .hasMessageContaining("Fineract down");
+        assertThat(cache.load("tenant", "party-1", () -> lookup("000000001")).join().getEntityAccountNo())
+                .isEqualTo("000000001");
+        assertThat(lookups).hasValue(1);
+    }
+
+    @Test
+    void loaderThatThrowsFailsTheLookup() {
+        CompletableFuture<AccountLookupServiceResponse> failed = cache.load("tenant", "party-1", () -> {
+            throw new IllegalStateException("No connection");
+        });
+
+        assertThatThrownBy(failed::get).isInstanceOf(ExecutionException.class)
+                .hasMessageContaining("No connection");
+        assertThat(cache.getSize()).isZero();
+    }
+
+    @Test
+    void invalidatedAccountIsLookedUpAgain() {
+        cache.load("tenant", "party-1", () -> lookup("000000001")).join();
+        cache.invalidate("tenant", "party-1");
+
+        assertThat(cache.load("tenant", "party-1", () -> lookup("000000002")).join().getEntityAccountNo())
+                .isEqualTo("000000002");
+        assertThat(lookups).hasValue(2);
+    }
+
+    @Test
+    void disabledCacheAlwaysCallsFineract() {
+        AccountLookupCache disabled = new AccountLookupCache(false, 60000, 5000, 100, now::get);
+
+        disabled.load("tenant", "party-1", () -> lookup("000000001")).join();
+        disabled.load("tenant", "party-1", () -> lookup("000000002")).join();
+
+        assertThat(lookups).hasValue(2);
+        assertThat(disabled.get("tenant", "party-1")).isNull();
+        assertThat(disabled.getSize()).isZero();
+    }
+
+    private CompletableFuture<AccountLookupServiceResponse> lookup(String entityAccountNo) {
+        lookups.incrementAndGet();
+        return CompletableFuture.completedFuture(entityAccountNo != null ? found(entityAccountNo) : new AccountLookupServiceResponse());
+    }
+
+    private static AccountLookupServiceResponse found(String entityAccountNo) {
+        AccountLookupServiceResponse response = new AccountLookupServiceResponse();
+        response.setEntityId(7);
+        response.setEntityAccountNo(entityAccountNo);
+        return response;
+    }
+
+    private void advance(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
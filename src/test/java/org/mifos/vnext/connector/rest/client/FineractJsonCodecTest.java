@@ -0,0 +1,152 @@
+package org.mifos.vnext.connector.rest.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.mifos.vnext.connector.dto.AccountDepositServiceRequest;
+import org.mifos.vnext.connector.dto.AccountDepositServiceResponse;
+import org.mifos.vnext.connector.dto.AccountLookupServiceResponse;
+import org.mifos.vnext.connector.dto.AccountWithdrawalServiceResponse;
+import org.mifos.vnext.connector.rest.client.FineractJsonCodec.ResponseTokens;
+
+class FineractJsonCodecTest {
+
+    private final FineractJsonCodec codec = new FineractJsonCodec();
+
+    @Test
+    void readsFirstLookupMatch() throws IOException {
+        AccountLookupServiceResponse response = codec.readLookupResponse(json("""
+                [{"parentName":"John Doe","entityId":7,"entityAccountNo":"000000007"},
+                 {"parentName":"Jane Roe","entityId":8,"entityAccountNo":"000000008"}]
+                """));
+
+        assertThat(response.getFirstName()).isEqualTo("John");
+        assertThat(response.getLastName()).isEqualTo("Doe");
+        assertThat(response.getEntityId()).isEqualTo(7);
+        assertThat(response.getEntityAccountNo()).isEqualTo("000000007");
+        assertThat(AccountLookupCache.isFound(response)).isTrue();
+    }
+
+    @Test
+    void singleWordParentNameHasNoLastName() throws IOException {
+        AccountLookupServiceResponse response = codec.readLookupResponse(json("""
+                [{"parentName":"Cher","entityId":7,"entityAccountNo":"000000007"}]
+                """));
+
+        assertThat(response.getFirstName()).isEqualTo("Cher");
+        assertThat(response.getLastName()).isEmpty();
+    }
+
+    @Test
+    void emptyLookupIsNotFound() throws IOException {
+        AccountLookupServiceResponse response = codec.readLookupResponse(json("[]"));
+
+        assertThat(AccountLookupCache.isFound(response)).isFalse();
+    }
+
+    @Test
+    void rejectsLookupWithMissingFields() {
+        assertThatThrownBy(() -> codec.readLookupResponse(json("""
+                [{"parentName":"John Doe","entityId":7}]
+                """))).isInstanceOf(JsonMappingException.class);
+    }
+
+    @Test
+    void rejectsLookupThatIsNotAnArray() {
+        assertThatThrownBy(() -> codec.readLookupResponse(json("""
+                {"parentName":"John Doe","entityId":7,"entityAccountNo":"000000007"}
+                """))).isInstanceOf(JsonMappingException.class);
+    }
+
+    @Test
+    void rejectsLookupThatIsNotJson() {
+        assertThatThrownBy(() -> codec.readLookupResponse(json("""
+                [{"parentName":"John Doe",<html>
+                """))).isInstanceOf(JsonParseException.class);
+    }
+
+    @Test
+    void rejectsEmptyLookupBody() {
+        assertThatThrownBy(() -> codec.readLookupResponse(json(""))).isInstanceOf(JsonMappingException.class);
+    }
+
+    @Test
+    void skipsUnknownNestedLookupFields() throws IOException {
+        AccountLookupServiceResponse response = codec.readLookupResponse(json("""
+                [{"entityStatus":{"id":300,"code":"clientStatusType.active","value":"Active"},
+                  "parentName":"John Doe",
+                  "tags":[{"entityId":99},[1,2]],
+                  "entityId":7,
+                  "entityAccountNo":"000000007"}]
+                """));
+
+        assertThat(response.getEntityId()).isEqualTo(7);
+        assertThat(response.getEntityAccountNo()).isEqualTo("000000007");
+    }
+
+    @Test
+    void readsDepositCommandResult() throws IOException {
+        AccountDepositServiceResponse response = codec.readDepositResponse(json("""
+                {"officeId":1,"clientId":2,"savingsId":3,"resourceId":4,"changes":{"note":"x"}}
+                """));
+
+        assertThat(response.getOfficeId()).isEqualTo(1);
+        assertThat(response.getClientId()).isEqualTo(2);
+        assertThat(response.getSavingsId()).isEqualTo(3);
+        assertThat(response.getResourceId()).isEqualTo(4);
+        assertThat(response.getTransactionStatus()).isEqualTo("success");
+    }
+
+    @Test
+    void rejectsWithdrawalWithMissingFields() {
+        assertThatThrownBy(() -> codec.readWithdrawalResponse(json("""
+                {"officeId":1,"clientId":2}
+                """))).isInstanceOf(JsonMappingException.class);
+    }
+
+    @Test
+    void readsWithdrawalCommandResult() throws IOException {
+        AccountWithdrawalServiceResponse response = codec.readWithdrawalResponse(json("""
+                {"officeId":1,"clientId":2,"savingsId":3,"resourceId":4}
+                """));
+
+        assertThat(response.getResourceId()).isEqualTo(4);
+    }
+
+    @Test
+    void writesCompactRequest() throws IOException {
+        AccountDepositServiceRequest request = new AccountDepositServiceRequest();
+        request.setTenant("mifos-bank-1");
+        request.setTransactionAmount(new BigDecimal("10.50"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.writeRequest(request, out);
+        String written = out.toString(StandardCharsets.UTF_8);
+
+        assertThat(written).doesNotContain("\n").contains("\"tenant\":\"mifos-bank-1\"").contains("\"transactionAmount\":10.50");
+    }
+
+    // Feeds the body like the I/O reactor does, a few bytes at a time through one reused buffer
+    private ResponseTokens json(String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ResponseTokens tokens = codec.newResponseTokens();
+        ByteBuffer chunk = ByteBuffer.allocate(5);
+        for (int offset = 0; offset < bytes.length; offset += chunk.capacity()) {
+            chunk.clear();
+            chunk.put(bytes, offset, Math.min(chunk.capacity(), bytes.length - offset));
+            chunk.flip();
+            tokens.feed(chunk);
+            assertThat(chunk.hasRemaining()).isFalse();
+        }
+        tokens.end();
+        return tokens;
+    }
+}